@@ -0,0 +1,119 @@
+package org.zuzukov.bank_rest.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zuzukov.bank_rest.service.CryptoService;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+// выделение памяти на операцию: mvn -Pjmh test-compile exec:exec -Djmh.args="CryptoServiceBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CryptoServiceBenchmark {
+
+    private static final String CARD_NUMBER = "4111111111111111";
+
+    private CryptoService cryptoService;
+    private SecretKey legacyKey;
+    private final SecureRandom legacyRandom = new SecureRandom();
+    private byte[] encrypted;
+    private String legacyEncrypted;
+    private byte[] plainBytes;
+    private byte[] encryptedBytes;
+
+    @State(Scope.Thread)
+    public static class Buffers {
+        final byte[] encrypted = new byte[CryptoService.encryptedLength(CARD_NUMBER.length())];
+        final byte[] plain = new byte[CARD_NUMBER.length()];
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++) key[i] = (byte) i;
+        cryptoService = new CryptoService();
+        Field secret = CryptoService.class.getDeclaredField("secretHex");
+        secret.setAccessible(true);
+        secret.set(cryptoService, HexFormat.of().formatHex(key));
+        Field fingerprintSecret = CryptoService.class.getDeclaredField("fingerprintSecretHex");
+        fingerprintSecret.setAccessible(true);
+        fingerprintSecret.set(cryptoService, HexFormat.of().formatHex(key));
+        cryptoService.init();
+        legacyKey = new SecretKeySpec(key, "AES");
+
+        encrypted = cryptoService.encrypt(CARD_NUMBER);
+        legacyEncrypted = legacyEncrypt();
+        plainBytes = CARD_NUMBER.getBytes(StandardCharsets.UTF_8);
+        encryptedBytes = encrypted;
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return cryptoService.encrypt(CARD_NUMBER);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return cryptoService.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public int encryptIntoBuffer(Buffers buffers) {
+        return cryptoService.encrypt(plainBytes, 0, plainBytes.length, buffers.encrypted, 0);
+    }
+
+    @Benchmark
+    public int decryptIntoBuffer(Buffers buffers) {
+        return cryptoService.decrypt(encryptedBytes, 0, encryptedBytes.length, buffers.plain, 0);
+    }
+
+    // прежняя реализация: Cipher.getInstance на каждый вызов, общий SecureRandom, промежуточный ByteBuffer и Base64
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        byte[] iv = new byte[12];
+        legacyRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, legacyKey, new GCMParameterSpec(128, iv));
+        byte[] ciphertext = cipher.doFinal(CARD_NUMBER.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer bb = ByteBuffer.allocate(iv.length + ciphertext.length);
+        bb.put(iv);
+        bb.put(ciphertext);
+        return Base64.getEncoder().encodeToString(bb.array());
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        ByteBuffer bb = ByteBuffer.wrap(Base64.getDecoder().decode(legacyEncrypted));
+        byte[] iv = new byte[12];
+        bb.get(iv);
+        byte[] ciphertext = new byte[bb.remaining()];
+        bb.get(ciphertext);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, legacyKey, new GCMParameterSpec(128, iv));
+        return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+    }
+}
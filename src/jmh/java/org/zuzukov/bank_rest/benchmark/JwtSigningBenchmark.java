@@ -0,0 +1,62 @@
+package org.zuzukov.bank_rest.benchmark;
+
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zuzukov.bank_rest.security.JwtKeyRing;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtSigningBenchmark {
+
+    @Param({"HS256", "ES256", "EdDSA"})
+    public String algorithm;
+
+    private JwtKeyRing keyRing;
+    private String token;
+
+    @Setup
+    public void setup() {
+        byte[] secret = new byte[32];
+        for (int i = 0; i < secret.length; i++) secret[i] = (byte) i;
+        keyRing = new JwtKeyRing(algorithm, "bench", Base64.getEncoder().encodeToString(secret), "", "", "", true);
+        token = sign();
+    }
+
+    @Benchmark
+    public String sign() {
+        // тот же набор claims, что у access-токена из JwtService
+        return keyRing.sign(Jwts.builder()
+                        .subject("john.doe@example.com")
+                        .expiration(new Date(System.currentTimeMillis() + 300_000))
+                        .id(UUID.randomUUID().toString())
+                        .claim("uid", "00000000-0000-0000-0000-000000000001")
+                        .claim("tep", 0)
+                        .claim("roles", List.of("ROLE_USER")))
+                .compact();
+    }
+
+    @Benchmark
+    public Object verify() {
+        return keyRing.parser().parseSignedClaims(token).getPayload();
+    }
+}
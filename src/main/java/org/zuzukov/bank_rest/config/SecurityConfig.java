@@ -1,6 +1,7 @@
 package org.zuzukov.bank_rest.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -12,13 +13,21 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import org.zuzukov.bank_rest.security.ApiKeyFilter;
 import org.zuzukov.bank_rest.security.JwtFilter;
 import org.zuzukov.bank_rest.security.CustomUserDetailsService;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity
@@ -26,6 +35,7 @@ import org.zuzukov.bank_rest.security.CustomUserDetailsService;
 public class SecurityConfig {
 
     private final JwtFilter jwtFilter;
+    private final ApiKeyFilter apiKeyFilter;
     private final CustomUserDetailsService customUserService;
 
     @Bean
@@ -37,6 +47,7 @@ public class SecurityConfig {
                                 "/auth/register",
                                 "/auth/login",
                                 "/auth/refresh",
+                                "/.well-known/jwks.json",
                                 "/swagger-ui.html",
                                 "/swagger-ui/**",
                                 "/v3/api-docs/**",
@@ -46,7 +57,8 @@ public class SecurityConfig {
                         ).permitAll()
                         .anyRequest().authenticated()
                 )
-                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(apiKeyFilter, JwtFilter.class);
 
         return http.build();
     }
@@ -58,9 +70,45 @@ public class SecurityConfig {
         return provider;
     }
 
+    @Value("${security.password.algorithm:bcrypt}")
+    private String passwordAlgorithm;
+
+    @Value("${security.password.bcrypt-strength:12}")
+    private int bcryptStrength;
+
+    @Value("${security.password.pbkdf2-iterations:310000}")
+    private int pbkdf2Iterations;
+
+    @Value("${security.password.pbkdf2-legacy-iterations:}")
+    private String pbkdf2LegacyIterations;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
+        // bcrypt хранит cost внутри хеша, у pbkdf2 число итераций зашито в id: {pbkdf2@310000}
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+        encoders.put("bcrypt", bcrypt);
+        Set<Integer> iterations = new HashSet<>();
+        iterations.add(pbkdf2Iterations);
+        for (String legacy : pbkdf2LegacyIterations.split(",")) {
+            if (!legacy.isBlank()) iterations.add(Integer.parseInt(legacy.trim()));
+        }
+        iterations.forEach(count -> encoders.put(pbkdf2Id(count), new Pbkdf2PasswordEncoder(
+                "", 16, count, Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256)));
+
+        String idForEncode = switch (passwordAlgorithm) {
+            case "bcrypt" -> "bcrypt";
+            case "pbkdf2" -> pbkdf2Id(pbkdf2Iterations);
+            default -> throw new IllegalArgumentException("Unsupported security.password.algorithm: " + passwordAlgorithm);
+        };
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(idForEncode, encoders);
+        // хеши без префикса выпущены до перехода на DelegatingPasswordEncoder и всегда были bcrypt
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
+    }
+
+    private static String pbkdf2Id(int iterations) {
+        return "pbkdf2@" + iterations;
     }
 
     @Bean
@@ -0,0 +1,72 @@
+package org.zuzukov.bank_rest.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.zuzukov.bank_rest.dto.ApiKeyCreateDto;
+import org.zuzukov.bank_rest.dto.ApiKeyDto;
+import org.zuzukov.bank_rest.security.ApiKeyService;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/admin/api-keys")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+@Slf4j
+public class ApiKeyAdminController {
+
+    private final ApiKeyService apiKeyService;
+
+    @Operation(
+            summary = "Выпустить API-ключ для сервисного аккаунта (ADMIN)",
+            description = """
+                    Создаёт долгоживущий ключ для машинного клиента. Ключ передаётся в заголовке `X-API-Key`
+                    и возвращается только в этом ответе: в БД хранится лишь его HMAC.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "Ключ создан"),
+                    @ApiResponse(responseCode = "404", description = "Пользователь не найден")
+            }
+    )
+    @PostMapping
+    public ResponseEntity<ApiKeyDto> create(@RequestBody @Valid ApiKeyCreateDto dto) {
+        ApiKeyDto created = apiKeyService.create(dto.getUserId(), dto.getName(), dto.getExpiresAt());
+        log.info("ADMIN create API key: userId={}, id={}", dto.getUserId(), created.getId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    }
+
+    @Operation(
+            summary = "Список API-ключей пользователя (ADMIN)",
+            parameters = @Parameter(name = "userId", description = "UUID пользователя", example = "1f7f3e4c-bca0-4e5c-9f9a-2b17cfa1c82b"),
+            responses = @ApiResponse(responseCode = "200", description = "Список ключей без их значений")
+    )
+    @GetMapping
+    public ResponseEntity<List<ApiKeyDto>> list(@RequestParam UUID userId) {
+        return ResponseEntity.ok(apiKeyService.list(userId));
+    }
+
+    @Operation(
+            summary = "Отозвать API-ключ (ADMIN)",
+            description = "Ключ перестаёт приниматься на всех узлах после рассылки инвалидации кэша.",
+            parameters = @Parameter(name = "id", description = "UUID ключа", example = "7b1d2c3e-0f4a-4b5c-8d9e-1a2b3c4d5e6f"),
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "Ключ отозван"),
+                    @ApiResponse(responseCode = "404", description = "Ключ не найден")
+            }
+    )
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> revoke(@PathVariable UUID id) {
+        apiKeyService.revoke(id);
+        log.info("ADMIN revoke API key: id={}", id);
+        return ResponseEntity.noContent().build();
+    }
+}
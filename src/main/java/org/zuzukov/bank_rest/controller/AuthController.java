@@ -5,12 +5,16 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.zuzukov.bank_rest.dto.*;
+import org.zuzukov.bank_rest.security.TokenIntrospectionService;
 import org.zuzukov.bank_rest.service.UserService;
 
 import java.security.Principal;
@@ -23,6 +27,7 @@ import java.util.UUID;
 public class AuthController {
 
     private final UserService userService;
+    private final TokenIntrospectionService tokenIntrospectionService;
 
     @Operation(
             summary = "Регистрация нового пользователя",
@@ -68,13 +73,16 @@ public class AuthController {
             responses = {
                     @ApiResponse(responseCode = "200", description = "Токены выданы",
                             content = @Content(schema = @Schema(implementation = JwtAuthenticationDto.class))),
-                    @ApiResponse(responseCode = "401", description = "Неверные учетные данные")
+                    @ApiResponse(responseCode = "401", description = "Неверные учетные данные"),
+                    @ApiResponse(responseCode = "429", description = "Слишком много попыток входа")
             }
     )
     @PostMapping("/login")
     public ResponseEntity<JwtAuthenticationDto> login(
-            @RequestBody @Valid UserCredentiallsDto credentialsDto) {
-        return ResponseEntity.ok(userService.signIn(credentialsDto));
+            @RequestBody @Valid UserCredentiallsDto credentialsDto,
+            HttpServletRequest request) {
+        // адрес клиента уже восстановлен из X-Forwarded-For, если запрос пришёл от прокси из SERVER_TRUSTED_PROXIES
+        return ResponseEntity.ok(userService.signIn(credentialsDto, request.getRemoteAddr()));
     }
 
     @Operation(
@@ -122,6 +130,35 @@ public class AuthController {
         return ResponseEntity.ok("Token revoked");
     }
 
+    @Operation(
+            summary = "Выход со всех устройств",
+            description = "Аннулирует все выданные текущему пользователю access и refresh токены.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Все токены пользователя отозваны"),
+                    @ApiResponse(responseCode = "401", description = "Недействительный токен")
+            }
+    )
+    @PostMapping("/logout-all")
+    public ResponseEntity<String> logoutAll(Principal principal) {
+        userService.revokeAllTokens(principal.getName());
+        return ResponseEntity.ok("All tokens revoked");
+    }
+
+    @Operation(
+            summary = "Интроспекция токена (RFC 7662, SERVICE)",
+            description = "Проверяет подпись, срок действия, отзыв и эпоху токена. Доступно сервисным учётным записям.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Статус токена",
+                            content = @Content(schema = @Schema(implementation = TokenIntrospectionDto.class))),
+                    @ApiResponse(responseCode = "403", description = "Нет роли ROLE_SERVICE")
+            }
+    )
+    @PreAuthorize("hasRole('ROLE_SERVICE')")
+    @PostMapping(value = "/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<TokenIntrospectionDto> introspect(@RequestParam("token") String token) {
+        return ResponseEntity.ok(tokenIntrospectionService.introspect(token));
+    }
+
     @Operation(
             summary = "Получить данные пользователя по email",
             responses = {
@@ -1,6 +1,7 @@
 package org.zuzukov.bank_rest.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.*;
 
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -17,6 +18,7 @@ import org.zuzukov.bank_rest.service.CardService;
 
 import java.math.BigDecimal;
 import java.security.Principal;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -24,6 +26,9 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class CardController {
 
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
     private final CardService cardService;
 
     @Operation(
@@ -50,6 +55,35 @@ public class CardController {
         return ResponseEntity.ok(cardService.adminCreate(dto));
     }
 
+    @Operation(
+            summary = "Выпустить карты с номерами, сгенерированными сервером (ADMIN)",
+            description = """
+                    Номера строятся из настроенного BIN (`card.issuing.bin`) и блока номеров счёта,
+                    зарезервированного через последовательность БД, с контрольной цифрой по алгоритму Луна.
+                    Номера уникальны по построению, поэтому вставка идёт без предварительной проверки дубликатов.
+                    """,
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            schema = @Schema(implementation = CardIssueDto.class),
+                            examples = @ExampleObject(value = """
+                                {
+                                  "ownerEmail": "john.doe@example.com",
+                                  "count": 100,
+                                  "expiryMonth": 12,
+                                  "expiryYear": 2028,
+                                  "initialBalance": 0
+                                }
+                                """)
+                    )
+            ),
+            responses = @ApiResponse(responseCode = "200", description = "Карты выпущены")
+    )
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping("/issue")
+    public ResponseEntity<List<CardDto>> issue(@Valid @RequestBody CardIssueDto dto) {
+        return ResponseEntity.ok(cardService.adminIssue(dto));
+    }
+
     @Operation(
             summary = "Перевод между картами пользователя",
             requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
@@ -68,9 +102,50 @@ public class CardController {
     )
     @PreAuthorize("hasAnyRole('ROLE_USER','ROLE_ADMIN')")
     @PostMapping("/transfer")
-    public ResponseEntity<Void> transfer(Principal principal, @Valid @RequestBody TransferRequestDto dto) {
-        cardService.transferBetweenOwn(principal.getName(), dto);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<TransferResultDto> transfer(
+            Principal principal,
+            @Parameter(description = "Повтор с тем же ключом возвращает сохранённый результат без повторного списания")
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody TransferRequestDto dto
+    ) {
+        TransferResultDto result = cardService.transferBetweenOwn(principal.getName(), dto, idempotencyKey);
+        return ResponseEntity.ok()
+                .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.isReplayed()))
+                .body(result);
+    }
+
+    @Operation(
+            summary = "Пакетный перевод между картами пользователя",
+            description = """
+                    Все карты пакета читаются и блокируются одним запросом, балансы меняются в памяти
+                    и записываются пакетными UPDATE при commit. `ALL_OR_NOTHING` откатывает весь пакет при первой
+                    же ошибке (корректные переводы получают статус `SKIPPED`), `BEST_EFFORT` выполняет всё, что прошло
+                    проверки. Результат по каждому переводу возвращается в `items` в порядке запроса.
+                    """,
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    content = @Content(
+                            schema = @Schema(implementation = BatchTransferRequestDto.class),
+                            examples = @ExampleObject(value = """
+                                {
+                                  "mode": "BEST_EFFORT",
+                                  "transfers": [
+                                    {
+                                      "fromCardId": "6d7b9cb3-8d0f-4c15-aaa9-5a7b88dc4b5a",
+                                      "toCardId": "ad9eaa2e-34b4-4d55-b6d1-66b14f8f902a",
+                                      "amount": 100.00
+                                    }
+                                  ]
+                                }
+                                """)
+                    )
+            ),
+            responses = @ApiResponse(responseCode = "200", description = "Пакет обработан, статус каждого перевода — в items")
+    )
+    @PreAuthorize("hasAnyRole('ROLE_USER','ROLE_ADMIN')")
+    @PostMapping("/transfer/batch")
+    public ResponseEntity<BatchTransferResultDto> transferBatch(Principal principal,
+                                                                @Valid @RequestBody BatchTransferRequestDto dto) {
+        return ResponseEntity.ok(cardService.transferBatch(principal.getName(), dto));
     }
 
     @Operation(summary = "Список карт пользователя (пагинация)")
@@ -94,6 +169,24 @@ public class CardController {
         return ResponseEntity.ok().build();
     }
 
+    @Operation(
+            summary = "История операций по карте пользователя",
+            description = """
+                    Записи журнала переводов от новых к старым. Пагинация keyset: в `cursor` передаётся
+                    `nextCursor` из предыдущего ответа, поэтому стоимость запроса не растёт с глубиной страницы.
+                    """
+    )
+    @PreAuthorize("hasAnyRole('ROLE_USER','ROLE_ADMIN')")
+    @GetMapping("/{id}/transactions")
+    public ResponseEntity<CardTransactionPageDto> transactions(
+            Principal principal,
+            @PathVariable UUID id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return ResponseEntity.ok(cardService.userTransactions(principal.getName(), id, cursor, limit));
+    }
+
     @Operation(summary = "Админ блокирует карту (ADMIN)")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PostMapping("/{id}/block")
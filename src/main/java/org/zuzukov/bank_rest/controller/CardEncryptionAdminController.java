@@ -0,0 +1,35 @@
+package org.zuzukov.bank_rest.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zuzukov.bank_rest.dto.card.CardReencryptionProgressDto;
+import org.zuzukov.bank_rest.util.CardReencryptionScheduler;
+
+@RestController
+@RequestMapping("/admin/cards/encryption")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+public class CardEncryptionAdminController {
+
+    private final CardReencryptionScheduler reencryptionScheduler;
+
+    @Operation(
+            summary = "Прогресс перешифрования номеров карт (ADMIN)",
+            description = """
+                    После смены `card.encryption-secret` и `card.encryption-key-version` фоновая задача
+                    перешифровывает номера карт новым ключом; старый ключ нужно оставить в `card.encryption-previous-keys`,
+                    пока `processed` не сравняется с `total`.
+                    """,
+            responses = @ApiResponse(responseCode = "200", description = "Состояние текущего или последнего прохода")
+    )
+    @GetMapping("/reencryption")
+    public ResponseEntity<CardReencryptionProgressDto> progress() {
+        return ResponseEntity.ok(reencryptionScheduler.progress());
+    }
+}
@@ -0,0 +1,34 @@
+package org.zuzukov.bank_rest.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.zuzukov.bank_rest.security.JwtKeyRing;
+
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+
+    private final JwtKeyRing keyRing;
+
+    @Value("${jwt.jwks.cache-max-age:PT5M}")
+    private Duration cacheMaxAge;
+
+    @Operation(
+            summary = "Открытые ключи для проверки JWT (JWK Set)",
+            description = "Содержит активный и предыдущие открытые ключи ES256/EdDSA. В режиме HS256 список пуст."
+    )
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks() {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(cacheMaxAge).cachePublic())
+                .body(keyRing.jwks());
+    }
+}
@@ -0,0 +1,54 @@
+package org.zuzukov.bank_rest.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.zuzukov.bank_rest.dto.JwtKeyRotateDto;
+import org.zuzukov.bank_rest.security.JwtKeyRing;
+
+import java.util.Map;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/admin/jwt/keys")
+@RequiredArgsConstructor
+@PreAuthorize("hasRole('ROLE_ADMIN')")
+@Slf4j
+public class JwtKeyAdminController {
+
+    private final JwtKeyRing keyRing;
+
+    @Operation(summary = "Список ключей подписи JWT (ADMIN)")
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> list() {
+        return ResponseEntity.ok(Map.of(
+                "algorithm", keyRing.algorithm(),
+                "active", keyRing.activeKid(),
+                "kids", keyRing.kids()));
+    }
+
+    @Operation(
+            summary = "Ротация ключа подписи JWT (ADMIN)",
+            description = "Новый ключ становится активным, предыдущие продолжают проверять уже выданные токены.",
+            responses = @ApiResponse(responseCode = "200", description = "Ключ активирован")
+    )
+    @PostMapping("/rotate")
+    public ResponseEntity<Set<String>> rotate(@RequestBody @Valid JwtKeyRotateDto dto) {
+        keyRing.rotate(dto.getKid(), dto.getSecret(), dto.getPrivateKey(), dto.getPublicKey());
+        log.info("ADMIN rotated JWT signing key: kid={}", dto.getKid());
+        return ResponseEntity.ok(keyRing.kids());
+    }
+
+    @Operation(summary = "Вывести ключ из ротации (ADMIN)")
+    @DeleteMapping("/{kid}")
+    public ResponseEntity<Void> retire(@PathVariable String kid) {
+        keyRing.retire(kid);
+        log.info("ADMIN retired JWT key: kid={}", kid);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,19 @@
+package org.zuzukov.bank_rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+public class ApiKeyCreateDto {
+    @NotNull(message = "User id is required")
+    private UUID userId;
+
+    @NotBlank(message = "Name is required")
+    private String name;
+
+    private LocalDateTime expiresAt;
+}
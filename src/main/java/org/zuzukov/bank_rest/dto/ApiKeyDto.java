@@ -0,0 +1,22 @@
+package org.zuzukov.bank_rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ApiKeyDto {
+    private UUID id;
+    private UUID userId;
+    private String name;
+    private String prefix;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+    private LocalDateTime revokedAt;
+
+    // заполняется только в ответе на создание, повторно получить ключ нельзя
+    private String key;
+}
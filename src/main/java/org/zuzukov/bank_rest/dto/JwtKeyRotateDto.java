@@ -0,0 +1,17 @@
+package org.zuzukov.bank_rest.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class JwtKeyRotateDto {
+    @NotBlank(message = "Key id is required")
+    private String kid;
+
+    // HS256: Base64-секрет
+    private String secret;
+
+    // ES256/EdDSA: Base64 PKCS#8 и X.509; без них пара генерируется на узле только при jwt.allow-ephemeral-keys=true
+    private String privateKey;
+    private String publicKey;
+}
@@ -0,0 +1,22 @@
+package org.zuzukov.bank_rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.util.Set;
+
+// поля по RFC 7662; для неактивного токена возвращается только active=false
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TokenIntrospectionDto {
+    private boolean active;
+    private String sub;
+    private String uid;
+    private String jti;
+    private Long exp;
+    private Set<String> roles;
+
+    public static TokenIntrospectionDto inactive() {
+        return new TokenIntrospectionDto();
+    }
+}
@@ -0,0 +1,21 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferRequestDto {
+    public enum Mode { ALL_OR_NOTHING, BEST_EFFORT }
+
+    @NotNull
+    private Mode mode = Mode.ALL_OR_NOTHING;
+
+    @NotEmpty
+    @Size(max = 1000)
+    private List<@Valid @NotNull TransferRequestDto> transfers;
+}
@@ -0,0 +1,26 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class BatchTransferResultDto {
+    public enum Status { APPLIED, REJECTED, SKIPPED }
+
+    @Data
+    public static class Item {
+        private int index;
+        private Status status;
+        // заполнен только для APPLIED
+        private UUID transferId;
+        private String message;
+    }
+
+    private BatchTransferRequestDto.Mode mode;
+    private int applied;
+    private int rejected;
+    // SKIPPED — перевод корректен, но не выполнен из-за отказа другого перевода в режиме ALL_OR_NOTHING
+    private List<Item> items;
+}
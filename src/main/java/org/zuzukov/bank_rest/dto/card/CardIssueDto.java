@@ -0,0 +1,24 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+public class CardIssueDto {
+    @NotBlank
+    private String ownerEmail;
+
+    @Min(1) @Max(10000)
+    private int count = 1;
+
+    @Min(1) @Max(12)
+    private int expiryMonth;
+
+    @Min(2024)
+    private int expiryYear;
+
+    @PositiveOrZero
+    private BigDecimal initialBalance;
+}
@@ -0,0 +1,16 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class CardReencryptionProgressDto {
+    private boolean running;
+    private int targetKeyVersion;
+    private long total;
+    private long processed;
+    private long failed;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
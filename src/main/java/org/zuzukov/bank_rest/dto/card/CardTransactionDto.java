@@ -0,0 +1,17 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+public class CardTransactionDto {
+    private long id;
+    private UUID transferId;
+    private UUID counterpartyCardId;
+    // отрицательная сумма — списание с карты, положительная — зачисление
+    private BigDecimal amount;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,12 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CardTransactionPageDto {
+    private List<CardTransactionDto> items;
+    // передаётся в cursor следующего запроса; null — история закончилась
+    private String nextCursor;
+}
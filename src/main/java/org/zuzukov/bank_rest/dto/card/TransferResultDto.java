@@ -0,0 +1,17 @@
+package org.zuzukov.bank_rest.dto.card;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferResultDto {
+    // совпадает с transfer_id проводок в истории операций карты
+    private UUID transferId;
+    // true — ответ на повтор запроса с тем же Idempotency-Key, деньги повторно не списывались
+    private boolean replayed;
+}
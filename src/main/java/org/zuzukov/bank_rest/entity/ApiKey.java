@@ -0,0 +1,43 @@
+package org.zuzukov.bank_rest.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "api_keys")
+@Data
+public class ApiKey {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "owner_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private User owner;
+
+    @Column(name = "name", nullable = false, length = 128)
+    private String name;
+
+    // HMAC-SHA256 от ключа, сам ключ не хранится
+    @Column(name = "key_hash", nullable = false, length = 64, unique = true)
+    private String keyHash;
+
+    @Column(name = "prefix", nullable = false, length = 16)
+    private String prefix;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+}
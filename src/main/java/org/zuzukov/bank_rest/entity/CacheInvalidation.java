@@ -0,0 +1,24 @@
+package org.zuzukov.bank_rest.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "cache_invalidations")
+@Data
+public class CacheInvalidation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cache_name", nullable = false, length = 64)
+    private String cacheName;
+
+    @Column(name = "cache_key", nullable = false)
+    private String cacheKey;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -23,12 +23,19 @@ public class Card {
     @EqualsAndHashCode.Exclude
     private User owner;
 
-    @Column(name = "number_enc", nullable = false, length = 512)
-    private String numberEncrypted;
+    // конверт CryptoService: версия ключа | IV | шифртекст | тег GCM
+    @Column(name = "number_enc", nullable = false)
+    private byte[] numberEncrypted;
+
+    @Column(name = "number_key_version", nullable = false)
+    private Integer numberKeyVersion = 1;
 
     @Column(name = "number_hash", nullable = false, length = 64, unique = true)
     private String numberHash; // новый столбец для хеша номера карты
 
+    @Column(name = "number_hash_version", nullable = false)
+    private Integer numberHashVersion = 1;
+
     @Column(name = "last4", nullable = false, length = 4)
     private String last4;
 
@@ -41,6 +48,11 @@ public class Card {
 
     @Column(name = "balance", nullable = false, precision = 19, scale = 2)
     private BigDecimal balance;
+
+    // проверяется при оптимистичной блокировке переводов (card.transfer.locking=optimistic)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 }
 
 
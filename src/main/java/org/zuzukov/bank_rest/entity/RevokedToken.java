@@ -11,12 +11,12 @@ import java.util.UUID;
 @Data
 public class RevokedToken {
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    private UUID id;
-
-    @Column(nullable = false, unique = true)
-    private String token;
+    @Column(name = "jti", nullable = false)
+    private UUID jti;
 
     @Column(name = "revoked_at", nullable = false)
     private LocalDateTime revokedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
 }
@@ -4,5 +4,6 @@ public enum Role {
     ROLE_ADMIN,
     ROLE_USER,
     ROLE_PREMIUM_USER,
-    ROLE_GUEST
+    ROLE_GUEST,
+    ROLE_SERVICE
 }
@@ -33,6 +33,9 @@ public class User {
     @Column(name = "version")
     private Integer version;
 
+    @Column(name = "token_epoch", nullable = false)
+    private Integer tokenEpoch = 0;
+
 
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "user_roles", joinColumns = @JoinColumn(name = "user_id"))
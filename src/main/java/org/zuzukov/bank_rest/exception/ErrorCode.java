@@ -7,6 +7,8 @@ public enum ErrorCode {
     BAD_REQUEST,
     CONFLICT,
     UNAUTHORIZED,
+    TOO_MANY_REQUESTS,
+    SERVICE_UNAVAILABLE,
     SERVER_ERROR
 }
 
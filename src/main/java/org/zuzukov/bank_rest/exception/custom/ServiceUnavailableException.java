@@ -0,0 +1,5 @@
+package org.zuzukov.bank_rest.exception.custom;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) { super(message); }
+}
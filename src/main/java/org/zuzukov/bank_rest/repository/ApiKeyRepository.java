@@ -0,0 +1,22 @@
+package org.zuzukov.bank_rest.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.zuzukov.bank_rest.entity.ApiKey;
+import org.zuzukov.bank_rest.security.ApiKeyPrincipal;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ApiKeyRepository extends JpaRepository<ApiKey, UUID> {
+    List<ApiKey> findAllByOwnerUserIdOrderByCreatedAtDesc(UUID userId);
+
+    @Query("""
+            select new org.zuzukov.bank_rest.security.ApiKeyPrincipal(k.id, o.userId, o.email, k.expiresAt)
+            from ApiKey k join k.owner o
+            where k.keyHash = :keyHash and k.revokedAt is null
+            """)
+    Optional<ApiKeyPrincipal> findActivePrincipal(@Param("keyHash") String keyHash);
+}
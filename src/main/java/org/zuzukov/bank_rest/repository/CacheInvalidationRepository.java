@@ -0,0 +1,20 @@
+package org.zuzukov.bank_rest.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import org.zuzukov.bank_rest.entity.CacheInvalidation;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface CacheInvalidationRepository extends JpaRepository<CacheInvalidation, Long> {
+    List<CacheInvalidation> findAllByCreatedAtAfter(LocalDateTime since);
+
+    @Modifying
+    @Transactional
+    @Query("delete from CacheInvalidation c where c.createdAt < :before")
+    int deleteAllCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,50 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class CardCiphertextWriter {
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Ciphertext(UUID id, byte[] numberEncrypted) {}
+
+    public record Replacement(UUID id, byte[] oldNumberEncrypted, byte[] newNumberEncrypted, int keyVersion) {}
+
+    public long countNotEncryptedWith(int keyVersion) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM cards WHERE number_key_version <> ?", Long.class, keyVersion);
+        return count == null ? 0 : count;
+    }
+
+    // keyset по id: каждая пачка — короткий индексный скан без OFFSET и без блокировки таблицы
+    public List<Ciphertext> findNotEncryptedWith(int keyVersion, UUID afterId, int limit) {
+        return jdbcTemplate.query("""
+                        SELECT id, number_enc FROM cards
+                        WHERE number_key_version <> ? AND id > ?
+                        ORDER BY id
+                        LIMIT ?
+                        """,
+                (rs, rowNum) -> new Ciphertext(rs.getObject("id", UUID.class), rs.getBytes("number_enc")),
+                keyVersion, afterId, limit);
+    }
+
+    // строка обновляется, только если шифртекст не поменялся с момента чтения; баланс и статус не трогаются
+    public int replace(List<Replacement> replacements) {
+        if (replacements.isEmpty()) {
+            return 0;
+        }
+        int[] updated = jdbcTemplate.batchUpdate(
+                "UPDATE cards SET number_enc = ?, number_key_version = ? WHERE id = ? AND number_enc = ?",
+                replacements.stream()
+                        .map(r -> new Object[]{r.newNumberEncrypted(), r.keyVersion(), r.id(), r.oldNumberEncrypted()})
+                        .toList());
+        return Arrays.stream(updated).map(count -> Math.max(count, 0)).sum();
+    }
+}
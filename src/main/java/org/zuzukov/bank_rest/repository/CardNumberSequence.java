@@ -0,0 +1,20 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@RequiredArgsConstructor
+public class CardNumberSequence {
+    private final JdbcTemplate jdbcTemplate;
+
+    // nextval не откатывается вместе с транзакцией, поэтому два узла никогда не получат один блок
+    public long nextBlock() {
+        Long block = jdbcTemplate.queryForObject("SELECT nextval('card_number_block_seq')", Long.class);
+        if (block == null) {
+            throw new IllegalStateException("card_number_block_seq returned no value");
+        }
+        return block;
+    }
+}
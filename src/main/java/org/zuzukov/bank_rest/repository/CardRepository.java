@@ -1,8 +1,11 @@
 package org.zuzukov.bank_rest.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.zuzukov.bank_rest.entity.Card;
@@ -10,6 +13,7 @@ import org.zuzukov.bank_rest.entity.CardStatus;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -17,6 +21,28 @@ import java.util.UUID;
 public interface CardRepository extends JpaRepository<Card, UUID> {
     boolean existsByNumberHash(String numberHash);
 
+    boolean existsByNumberHashVersion(Integer numberHashVersion);
+
+    @Query("""
+                select c from Card c
+                where c.numberHashVersion = :version and c.id > :afterId
+                order by c.id
+            """)
+    List<Card> findBatchByNumberHashVersion(@Param("version") Integer version,
+                                            @Param("afterId") UUID afterId,
+                                            Pageable pageable);
+
+    // точечный UPDATE, чтобы перехеширование не перезаписывало баланс и статус, изменённые параллельно
+    @Modifying
+    @Query("""
+                update Card c set c.numberHash = :numberHash, c.numberHashVersion = :toVersion
+                where c.id = :id and c.numberHashVersion = :fromVersion
+            """)
+    int updateNumberHash(@Param("id") UUID id,
+                         @Param("numberHash") String numberHash,
+                         @Param("fromVersion") Integer fromVersion,
+                         @Param("toVersion") Integer toVersion);
+
     @Query("SELECT c FROM Card c WHERE c.status = :status AND c.expiry < :date")
     List<Card> findAllActiveExpired(CardStatus status, LocalDate date);
 
@@ -27,6 +53,56 @@ public interface CardRepository extends JpaRepository<Card, UUID> {
 
     Optional<Card> findByIdAndOwnerEmail(UUID cardId, String email);
 
+    boolean existsByIdAndOwnerEmail(UUID cardId, String email);
+
+    // SELECT ... FOR UPDATE; владелец проверяется подзапросом, чтобы блокировка не захватывала строку users
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+                select c from Card c
+                where c.id = :id
+                  and c.owner.userId = (select u.userId from User u where u.email = :email)
+            """)
+    Optional<Card> findForUpdateByIdAndOwnerEmail(@Param("id") UUID cardId, @Param("email") String email);
+
+    // одна выборка на весь пакет; строки блокируются в порядке id, как и в одиночном переводе
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+                select c from Card c
+                where c.id in :ids
+                  and c.owner.userId = (select u.userId from User u where u.email = :email)
+                order by c.id
+            """)
+    List<Card> findAllForUpdateByIdInAndOwnerEmail(@Param("ids") Collection<UUID> cardIds, @Param("email") String email);
+
+    // условное списание одним UPDATE: 0 строк значит, что карта не найдена, не активна, истекла или денег не хватает;
+    // version увеличивается, чтобы загруженные ранее сущности не перезаписали баланс устаревшим значением
+    @Modifying
+    @Query("""
+                update Card c set c.balance = c.balance - :amount, c.version = c.version + 1
+                where c.id = :id
+                  and c.owner.userId = (select u.userId from User u where u.email = :email)
+                  and c.status = org.zuzukov.bank_rest.entity.CardStatus.ACTIVE
+                  and c.expiry >= :today
+                  and c.balance >= :amount
+            """)
+    int debitIfAllowed(@Param("id") UUID cardId,
+                       @Param("email") String email,
+                       @Param("amount") BigDecimal amount,
+                       @Param("today") LocalDate today);
+
+    @Modifying
+    @Query("""
+                update Card c set c.balance = c.balance + :amount, c.version = c.version + 1
+                where c.id = :id
+                  and c.owner.userId = (select u.userId from User u where u.email = :email)
+                  and c.status = org.zuzukov.bank_rest.entity.CardStatus.ACTIVE
+                  and c.expiry >= :today
+            """)
+    int creditIfAllowed(@Param("id") UUID cardId,
+                        @Param("email") String email,
+                        @Param("amount") BigDecimal amount,
+                        @Param("today") LocalDate today);
+
     @Query("""
                 select c from Card c
                 where c.owner.email = coalesce(:ownerEmail, c.owner.email)
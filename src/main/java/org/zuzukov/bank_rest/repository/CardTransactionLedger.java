@@ -0,0 +1,68 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class CardTransactionLedger {
+    private final JdbcTemplate jdbcTemplate;
+
+    // amount со знаком: списание отрицательное, зачисление положительное
+    public record Posting(UUID transferId, UUID cardId, UUID counterpartyCardId, BigDecimal amount, LocalDateTime createdAt) {}
+
+    public record Entry(long id, UUID transferId, UUID cardId, UUID counterpartyCardId, BigDecimal amount, LocalDateTime createdAt) {}
+
+    private static final RowMapper<Entry> ENTRY = (rs, rowNum) -> new Entry(
+            rs.getLong("id"),
+            rs.getObject("transfer_id", UUID.class),
+            rs.getObject("card_id", UUID.class),
+            rs.getObject("counterparty_card_id", UUID.class),
+            rs.getBigDecimal("amount"),
+            rs.getTimestamp("created_at").toLocalDateTime());
+
+    // только INSERT: строки журнала не изменяются и не удаляются
+    public void append(List<Posting> postings) {
+        if (postings.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                        INSERT INTO card_transactions (id, transfer_id, card_id, counterparty_card_id, amount, created_at)
+                        VALUES (nextval('card_transactions_id_seq'), ?, ?, ?, ?, ?)
+                        """,
+                postings.stream()
+                        .map(p -> new Object[]{p.transferId(), p.cardId(), p.counterpartyCardId(), p.amount(),
+                                Timestamp.valueOf(p.createdAt())})
+                        .toList());
+    }
+
+    // keyset по (created_at, id) в обратном порядке: глубина страницы не влияет на стоимость запроса
+    public List<Entry> findPage(UUID cardId, LocalDateTime beforeCreatedAt, Long beforeId, int limit) {
+        if (beforeCreatedAt == null) {
+            return jdbcTemplate.query("""
+                            SELECT id, transfer_id, card_id, counterparty_card_id, amount, created_at
+                            FROM card_transactions
+                            WHERE card_id = ?
+                            ORDER BY created_at DESC, id DESC
+                            LIMIT ?
+                            """,
+                    ENTRY, cardId, limit);
+        }
+        return jdbcTemplate.query("""
+                        SELECT id, transfer_id, card_id, counterparty_card_id, amount, created_at
+                        FROM card_transactions
+                        WHERE card_id = ? AND (created_at, id) < (?, ?)
+                        ORDER BY created_at DESC, id DESC
+                        LIMIT ?
+                        """,
+                ENTRY, cardId, Timestamp.valueOf(beforeCreatedAt), beforeId, limit);
+    }
+}
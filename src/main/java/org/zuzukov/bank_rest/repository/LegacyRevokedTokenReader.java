@@ -0,0 +1,27 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class LegacyRevokedTokenReader {
+    private final JdbcTemplate jdbcTemplate;
+
+    // отзывы, записанные до перехода на jti: SHA-256 токена -> expiresAt; таблица удаляется миграцией после их истечения
+    public Map<String, LocalDateTime> findActive(LocalDateTime now) {
+        Map<String, LocalDateTime> expiryByHash = new HashMap<>();
+        jdbcTemplate.query("SELECT token, expires_at FROM revoked_tokens_legacy WHERE expires_at > ?",
+                rs -> {
+                    expiryByHash.put(rs.getString("token"), rs.getTimestamp("expires_at").toLocalDateTime());
+                },
+                Timestamp.valueOf(now));
+        return expiryByHash;
+    }
+}
@@ -2,13 +2,21 @@ package org.zuzukov.bank_rest.repository;
 
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.zuzukov.bank_rest.entity.RevokedToken;
 
 
-import java.util.Optional;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
 
-public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
-    Optional<RevokedToken> findByToken(String token);
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, UUID> {
+    boolean existsByJti(UUID jti);
 
-    boolean existsByToken(String tokenHash);
+    @Query("select r.jti from RevokedToken r where r.expiresAt > :now")
+    List<UUID> findActiveJtis(@Param("now") LocalDateTime now);
+
+    @Query("select r.jti from RevokedToken r where r.revokedAt > :since")
+    List<UUID> findJtisRevokedSince(@Param("since") LocalDateTime since);
 }
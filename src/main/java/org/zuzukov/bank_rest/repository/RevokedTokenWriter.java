@@ -0,0 +1,38 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class RevokedTokenWriter {
+    private final JdbcTemplate jdbcTemplate;
+
+    // одна многострочная вставка на пачку; дубликаты от повторных flush и других узлов пропускаются
+    public int insertIgnoringDuplicates(Map<UUID, LocalDateTime> expiryByJti, LocalDateTime revokedAt) {
+        if (expiryByJti.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO revoked_tokens (jti, revoked_at, expires_at) VALUES ");
+        sql.append(String.join(",", Collections.nCopies(expiryByJti.size(), "(?, ?, ?)")));
+        sql.append(" ON CONFLICT DO NOTHING");
+
+        Timestamp revoked = Timestamp.valueOf(revokedAt);
+        List<Object> args = new ArrayList<>(expiryByJti.size() * 3);
+        expiryByJti.forEach((jti, expiresAt) -> {
+            args.add(jti);
+            args.add(revoked);
+            args.add(Timestamp.valueOf(expiresAt));
+        });
+        return jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+}
@@ -0,0 +1,51 @@
+package org.zuzukov.bank_rest.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+@RequiredArgsConstructor
+public class TransferIdempotencyWriter {
+    private final JdbcTemplate jdbcTemplate;
+
+    public record Claim(String requestHash, UUID transferId) {}
+
+    // параллельный запрос с тем же ключом ждёт на уникальном индексе до commit первого и получает 0 строк
+    public boolean insert(String userEmail, String key, Claim claim, LocalDateTime createdAt, LocalDateTime expiresAt) {
+        return jdbcTemplate.update("""
+                        INSERT INTO transfer_idempotency_keys (user_email, idem_key, request_hash, transfer_id, created_at, expires_at)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON CONFLICT DO NOTHING
+                        """,
+                userEmail, key, claim.requestHash(), claim.transferId(),
+                Timestamp.valueOf(createdAt), Timestamp.valueOf(expiresAt)) == 1;
+    }
+
+    public Optional<Claim> find(String userEmail, String key) {
+        return jdbcTemplate.query("""
+                        SELECT request_hash, transfer_id FROM transfer_idempotency_keys
+                        WHERE user_email = ? AND idem_key = ?
+                        """,
+                (rs, rowNum) -> new Claim(rs.getString("request_hash"), rs.getObject("transfer_id", UUID.class)),
+                userEmail, key).stream().findFirst();
+    }
+
+    // удаление пачками по индексу expires_at, чтобы не держать долгую транзакцию на большой таблице
+    public int purgeExpired(LocalDateTime now, int limit) {
+        return jdbcTemplate.update("""
+                        DELETE FROM transfer_idempotency_keys
+                        WHERE (user_email, idem_key) IN (
+                            SELECT user_email, idem_key FROM transfer_idempotency_keys
+                            WHERE expires_at < ?
+                            LIMIT ?
+                        )
+                        """,
+                Timestamp.valueOf(now), limit);
+    }
+}
@@ -3,6 +3,8 @@ package org.zuzukov.bank_rest.repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.zuzukov.bank_rest.entity.User;
 
 import java.util.Optional;
@@ -12,4 +14,7 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByUserId(UUID id);
     Optional<User> findByEmail(String email);
     Page<User> findAll(Pageable pageable);
+
+    @Query("select u.tokenEpoch from User u where u.userId = :id")
+    Optional<Integer> findTokenEpochByUserId(@Param("id") UUID id);
 }
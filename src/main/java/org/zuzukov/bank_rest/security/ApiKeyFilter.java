@@ -0,0 +1,51 @@
+package org.zuzukov.bank_rest.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+@Component
+@RequiredArgsConstructor
+public class ApiKeyFilter extends OncePerRequestFilter {
+    public static final String HEADER = "X-API-Key";
+
+    private final ApiKeyService apiKeyService;
+    private final CustomUserDetailsService customUserService;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        // Bearer-токен, если он уже принят JwtFilter, имеет приоритет над ключом
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            try {
+                apiKeyService.authenticate(request.getHeader(HEADER)).ifPresent(this::setAuthentication);
+            } catch (Exception ex) {
+                logger.error("Cannot set API key authentication: " + ex.getMessage());
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private void setAuthentication(ApiKeyPrincipal principal) {
+        // роли берутся из кэша UserDetails, который сбрасывается при их изменении
+        UserDetail userDetail = (UserDetail) customUserService.loadUserByUsername(principal.email());
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(userDetail,
+                null, userDetail.getAuthorities());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(HEADER) == null;
+    }
+}
@@ -0,0 +1,7 @@
+package org.zuzukov.bank_rest.security;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record ApiKeyPrincipal(UUID keyId, UUID userId, String email, LocalDateTime expiresAt) {
+}
@@ -0,0 +1,148 @@
+package org.zuzukov.bank_rest.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.zuzukov.bank_rest.dto.ApiKeyDto;
+import org.zuzukov.bank_rest.entity.ApiKey;
+import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.exception.custom.NotFoundException;
+import org.zuzukov.bank_rest.repository.ApiKeyRepository;
+import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.service.CacheInvalidationBus;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+@Slf4j
+public class ApiKeyService {
+    static final String CACHE_NAME = "apiKeys";
+    static final String KEY_PREFIX = "bk_";
+    private static final int KEY_BYTES = 32;
+    private static final int DISPLAY_PREFIX_LENGTH = 11;
+
+    private final ApiKeyRepository apiKeyRepository;
+    private final UserRepository userRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final SecretKeySpec hmacKey;
+    private final SecureRandom secureRandom = new SecureRandom();
+    // Mac не потокобезопасен, а Mac.getInstance на каждый запрос заметно дороже самого HMAC
+    private final ThreadLocal<Mac> macs;
+    private final LoadingCache<String, Optional<ApiKeyPrincipal>> principals;
+
+    public ApiKeyService(ApiKeyRepository apiKeyRepository,
+                         UserRepository userRepository,
+                         CacheInvalidationBus invalidationBus,
+                         MeterRegistry meterRegistry,
+                         @Value("${security.api-keys.hmac-secret}") String hmacSecret,
+                         @Value("${security.api-keys.cache.max-size:10000}") long maxSize,
+                         @Value("${security.api-keys.cache.ttl:PT5M}") Duration ttl) {
+        if (hmacSecret == null || hmacSecret.isBlank()) {
+            throw new IllegalArgumentException("security.api-keys.hmac-secret is not configured");
+        }
+        this.apiKeyRepository = apiKeyRepository;
+        this.userRepository = userRepository;
+        this.invalidationBus = invalidationBus;
+        this.hmacKey = new SecretKeySpec(hmacSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        // кэшируются и промахи: перебор несуществующих ключей не должен каждый раз идти в БД
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(apiKeyRepository::findActivePrincipal);
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, CACHE_NAME);
+        invalidationBus.subscribe(CACHE_NAME, principals::invalidate);
+    }
+
+    public Optional<ApiKeyPrincipal> authenticate(String rawKey) {
+        if (rawKey == null || !rawKey.startsWith(KEY_PREFIX)) {
+            return Optional.empty();
+        }
+        return principals.get(hash(rawKey))
+                .filter(principal -> principal.expiresAt() == null
+                        || principal.expiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Transactional
+    public ApiKeyDto create(UUID userId, String name, LocalDateTime expiresAt) {
+        User owner = userRepository.findByUserId(userId)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+        byte[] random = new byte[KEY_BYTES];
+        secureRandom.nextBytes(random);
+        String rawKey = KEY_PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+
+        ApiKey apiKey = new ApiKey();
+        apiKey.setOwner(owner);
+        apiKey.setName(name);
+        apiKey.setKeyHash(hash(rawKey));
+        apiKey.setPrefix(rawKey.substring(0, DISPLAY_PREFIX_LENGTH));
+        apiKey.setCreatedAt(LocalDateTime.now());
+        apiKey.setExpiresAt(expiresAt);
+        ApiKeyDto dto = toDto(apiKeyRepository.save(apiKey));
+        dto.setKey(rawKey);
+        log.info("API key created: id={}, userId={}, prefix={}", dto.getId(), userId, dto.getPrefix());
+        return dto;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ApiKeyDto> list(UUID userId) {
+        return apiKeyRepository.findAllByOwnerUserIdOrderByCreatedAtDesc(userId).stream()
+                .map(this::toDto)
+                .toList();
+    }
+
+    @Transactional
+    public void revoke(UUID id) {
+        ApiKey apiKey = apiKeyRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("API key not found"));
+        if (apiKey.getRevokedAt() == null) {
+            apiKey.setRevokedAt(LocalDateTime.now());
+        }
+        invalidationBus.publish(CACHE_NAME, apiKey.getKeyHash());
+        log.info("API key revoked: id={}", id);
+    }
+
+    // ключ содержит 256 бит случайности, поэтому медленный BCrypt не нужен: достаточно HMAC с серверным секретом
+    String hash(String rawKey) {
+        return HexFormat.of().formatHex(macs.get().doFinal(rawKey.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(hmacKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private ApiKeyDto toDto(ApiKey apiKey) {
+        ApiKeyDto dto = new ApiKeyDto();
+        dto.setId(apiKey.getId());
+        dto.setUserId(apiKey.getOwner().getUserId());
+        dto.setName(apiKey.getName());
+        dto.setPrefix(apiKey.getPrefix());
+        dto.setCreatedAt(apiKey.getCreatedAt());
+        dto.setExpiresAt(apiKey.getExpiresAt());
+        dto.setRevokedAt(apiKey.getRevokedAt());
+        return dto;
+    }
+}
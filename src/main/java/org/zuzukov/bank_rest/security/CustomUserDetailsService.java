@@ -1,25 +1,55 @@
 package org.zuzukov.bank_rest.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.service.CacheInvalidationBus;
+
+import java.time.Duration;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
+    static final String CACHE_NAME = "userDetails";
 
     private final UserRepository userRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final Cache<String, UserDetail> cache;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository,
+                                    CacheInvalidationBus invalidationBus,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${security.user-details-cache.max-size:10000}") long maxSize,
+                                    @Value("${security.user-details-cache.ttl:PT5M}") Duration ttl) {
         this.userRepository = userRepository;
+        this.invalidationBus = invalidationBus;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        invalidationBus.subscribe(CACHE_NAME, cache::invalidate);
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+        return cache.get(email, this::load);
+    }
+
+    public void evict(String email) {
+        invalidationBus.publish(CACHE_NAME, email);
+    }
+
+    private UserDetail load(String email) {
         return userRepository.findByEmail(email)
                 .map(UserDetail::new)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + email));
-
     }
 }
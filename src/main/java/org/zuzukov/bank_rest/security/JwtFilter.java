@@ -6,6 +6,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,6 +21,9 @@ public class JwtFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
     private final CustomUserDetailsService customUserService;
 
+    @Value("${jwt.stateless-auth:false}")
+    private boolean statelessAuth;
+
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
@@ -30,8 +34,8 @@ public class JwtFilter extends OncePerRequestFilter {
 
         try {
             String token = getTokenFromRequest(request);
-            if (token != null && jwtService.validateJwtToken(token)) {
-                setCustomUserDetailsToSecurityContextHolder(token);
+            if (token != null) {
+                jwtService.verify(token).ifPresent(this::setCustomUserDetailsToSecurityContextHolder);
             }
         } catch (Exception ex) {
             logger.error("Cannot set user authentication: {}");
@@ -41,9 +45,11 @@ public class JwtFilter extends OncePerRequestFilter {
     }
 
 
-    private void setCustomUserDetailsToSecurityContextHolder(String token) {
-        String email = jwtService.getEmailFromToken(token);
-        UserDetail customUserDetails = (UserDetail) customUserService.loadUserByUsername(email);
+    private void setCustomUserDetailsToSecurityContextHolder(VerifiedToken token) {
+        // в stateless-режиме роли и id пользователя берутся из подписанных claims без запроса в БД
+        UserDetail customUserDetails = statelessAuth && token.userId() != null
+                ? UserDetail.fromToken(token)
+                : (UserDetail) customUserService.loadUserByUsername(token.subject());
         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(customUserDetails,
                 null, customUserDetails.getAuthorities());
         SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -62,6 +68,7 @@ public class JwtFilter extends OncePerRequestFilter {
         return path.startsWith("/auth/register")
                 || path.startsWith("/auth/login")
                 || path.startsWith("/auth/refresh")
+                || path.startsWith("/.well-known/jwks.json")
 
                 || path.startsWith("/swagger-ui")
                 || path.startsWith("/v3/api-docs")
@@ -0,0 +1,231 @@
+package org.zuzukov.bank_rest.security;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.ProtectedHeader;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecureDigestAlgorithm;
+import io.jsonwebtoken.security.SignatureException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+@Slf4j
+public class JwtKeyRing {
+
+    private final String algorithm;
+    private final boolean allowEphemeralKeys;
+    private final JwtParser parser;
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public JwtKeyRing(@Value("${jwt.algorithm:HS256}") String algorithm,
+                      @Value("${jwt.key-id:primary}") String activeKid,
+                      @Value("${jwt.secret:}") String activeSecret,
+                      @Value("${jwt.private-key:}") String privateKey,
+                      @Value("${jwt.public-key:}") String publicKey,
+                      @Value("${jwt.previous-keys:}") String previousKeys,
+                      @Value("${jwt.allow-ephemeral-keys:false}") boolean allowEphemeralKeys) {
+        this.algorithm = algorithm;
+        this.allowEphemeralKeys = allowEphemeralKeys;
+        signatureAlgorithm(algorithm);
+        Map<String, KeyEntry> keys = new LinkedHashMap<>();
+        // формат: kid:base64Secret для HMAC или kid:ES256:base64X509 / kid:EdDSA:base64X509 для открытых ключей
+        for (String entry : previousKeys.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                keys.put(parts[0], hmacEntry(parts[0], parts[1]));
+            } else if (parts.length == 3) {
+                keys.put(parts[0], new KeyEntry(parts[0], parts[1], null, decodePublic(parts[1], parts[2])));
+            } else {
+                throw new IllegalArgumentException("Invalid jwt.previous-keys entry, expected kid:secret or kid:alg:publicKey");
+            }
+        }
+        keys.put(activeKid, newEntry(activeKid, activeSecret, privateKey, publicKey));
+        this.snapshot = Snapshot.of(activeKid, keys);
+        this.parser = Jwts.parser().keyLocator(new KidLocator()).build();
+        log.info("JWT key ring initialized: algorithm={}, active kid={}, verification kids={}",
+                algorithm, activeKid, keys.keySet());
+    }
+
+    public JwtKeyRing(String activeKid, String activeSecret, String previousKeys) {
+        this("HS256", activeKid, activeSecret, "", "", previousKeys, false);
+    }
+
+    public JwtParser parser() {
+        return parser;
+    }
+
+    public JwtBuilder sign(JwtBuilder builder) {
+        Snapshot current = snapshot;
+        KeyEntry active = current.keys().get(current.activeKid());
+        return signWith(builder.header().keyId(active.kid()).and(), active.signingKey(), signatureAlgorithm(active.algorithm()));
+    }
+
+    public void rotate(String kid, String base64Secret) {
+        rotate(kid, base64Secret, null, null);
+    }
+
+    public synchronized void rotate(String kid, String base64Secret, String privateKey, String publicKey) {
+        // kid нельзя переиспользовать: замена ключа под тем же kid сломала бы проверку всех выданных им токенов
+        if (snapshot.keys().containsKey(kid)) {
+            throw new IllegalArgumentException("Key id is already in use: " + kid);
+        }
+        Map<String, KeyEntry> keys = new HashMap<>(snapshot.keys());
+        keys.put(kid, newEntry(kid, base64Secret, privateKey, publicKey));
+        snapshot = Snapshot.of(kid, keys);
+        log.info("JWT signing key rotated: algorithm={}, active kid={}", algorithm, kid);
+    }
+
+    public synchronized void retire(String kid) {
+        Snapshot current = snapshot;
+        if (kid.equals(current.activeKid())) {
+            throw new IllegalArgumentException("Cannot retire active signing key: " + kid);
+        }
+        Map<String, KeyEntry> keys = new HashMap<>(current.keys());
+        keys.remove(kid);
+        snapshot = Snapshot.of(current.activeKid(), keys);
+        log.info("JWT key retired: kid={}", kid);
+    }
+
+    public String activeKid() {
+        return snapshot.activeKid();
+    }
+
+    public Set<String> kids() {
+        return snapshot.keys().keySet();
+    }
+
+    public String algorithm() {
+        return algorithm;
+    }
+
+    // JWK Set строится один раз на версию ключей, эндпоинт отдаёт готовый объект
+    public Map<String, Object> jwks() {
+        return snapshot.jwks();
+    }
+
+    private KeyEntry newEntry(String kid, String secret, String privateKey, String publicKey) {
+        if ("HS256".equals(algorithm)) {
+            if (secret == null || secret.isBlank()) {
+                throw new IllegalArgumentException("Secret is required for HS256 key: " + kid);
+            }
+            return hmacEntry(kid, secret);
+        }
+        if (privateKey == null || privateKey.isBlank()) {
+            // сгенерированная пара живёт только на этом узле и теряется при перезапуске: только для локальной разработки
+            if (!allowEphemeralKeys) {
+                throw new IllegalArgumentException("Private and public keys are required for " + algorithm
+                        + " key: " + kid + " (set jwt.allow-ephemeral-keys=true to generate one for development)");
+            }
+            KeyPair pair = "ES256".equals(algorithm)
+                    ? Jwts.SIG.ES256.keyPair().build()
+                    : Jwts.SIG.EdDSA.keyPair().build();
+            log.warn("Generated ephemeral {} key pair for kid={}", algorithm, kid);
+            return new KeyEntry(kid, algorithm, pair.getPrivate(), pair.getPublic());
+        }
+        if (publicKey == null || publicKey.isBlank()) {
+            throw new IllegalArgumentException("Public key is required together with private key: " + kid);
+        }
+        return new KeyEntry(kid, algorithm, decodePrivate(algorithm, privateKey), decodePublic(algorithm, publicKey));
+    }
+
+    private static KeyEntry hmacEntry(String kid, String base64Secret) {
+        Key key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret));
+        return new KeyEntry(kid, "HS256", key, key);
+    }
+
+    private static SecureDigestAlgorithm<?, ?> signatureAlgorithm(String algorithm) {
+        return switch (algorithm) {
+            case "HS256" -> Jwts.SIG.HS256;
+            case "ES256" -> Jwts.SIG.ES256;
+            case "EdDSA" -> Jwts.SIG.EdDSA;
+            default -> throw new IllegalArgumentException("Unsupported jwt.algorithm: " + algorithm);
+        };
+    }
+
+    private static String keyFactoryAlgorithm(String algorithm) {
+        return switch (algorithm) {
+            case "ES256" -> "EC";
+            case "EdDSA" -> "Ed25519";
+            default -> throw new IllegalArgumentException("Not an asymmetric jwt algorithm: " + algorithm);
+        };
+    }
+
+    private static PrivateKey decodePrivate(String algorithm, String base64Pkcs8) {
+        try {
+            return KeyFactory.getInstance(keyFactoryAlgorithm(algorithm))
+                    .generatePrivate(new PKCS8EncodedKeySpec(Decoders.BASE64.decode(base64Pkcs8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " private key", e);
+        }
+    }
+
+    private static PublicKey decodePublic(String algorithm, String base64X509) {
+        try {
+            return KeyFactory.getInstance(keyFactoryAlgorithm(algorithm))
+                    .generatePublic(new X509EncodedKeySpec(Decoders.BASE64.decode(base64X509)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid " + algorithm + " public key", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Key> JwtBuilder signWith(JwtBuilder builder, Key key, SecureDigestAlgorithm<?, ?> algorithm) {
+        return builder.signWith((K) key, (SecureDigestAlgorithm<? super K, ?>) algorithm);
+    }
+
+    private record KeyEntry(String kid, String algorithm, Key signingKey, Key verificationKey) {}
+
+    private record Snapshot(String activeKid, Map<String, KeyEntry> keys, Map<String, Object> jwks) {
+        static Snapshot of(String activeKid, Map<String, KeyEntry> keys) {
+            List<Map<String, ?>> published = new ArrayList<>();
+            // секреты HMAC не публикуются, в JWK Set попадают только открытые ключи
+            keys.values().stream()
+                    .filter(entry -> entry.verificationKey() instanceof PublicKey)
+                    .forEach(entry -> published.add(Jwks.builder()
+                            .key((PublicKey) entry.verificationKey())
+                            .id(entry.kid())
+                            .algorithm(entry.algorithm())
+                            .publicKeyUse("sig")
+                            .build()));
+            return new Snapshot(activeKid, Map.copyOf(keys), Map.of("keys", List.copyOf(published)));
+        }
+    }
+
+    private class KidLocator extends LocatorAdapter<Key> {
+        @Override
+        protected Key locate(ProtectedHeader header) {
+            Snapshot current = snapshot;
+            // токены, выпущенные до появления kid, проверяются активным ключом
+            String kid = header.getKeyId() == null ? current.activeKid() : header.getKeyId();
+            KeyEntry entry = current.keys().get(kid);
+            if (entry == null) {
+                throw new SignatureException("Unknown signing key id: " + kid);
+            }
+            return entry.verificationKey();
+        }
+    }
+}
@@ -1,43 +1,39 @@
 package org.zuzukov.bank_rest.security;
 
 import io.jsonwebtoken.*;
-import io.jsonwebtoken.io.Decoders;
-import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.zuzukov.bank_rest.dto.JwtAuthenticationDto;
-import org.zuzukov.bank_rest.entity.RevokedToken;
-import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
+import org.zuzukov.bank_rest.entity.Role;
+import org.zuzukov.bank_rest.entity.User;
 
-import javax.crypto.SecretKey;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @Component
 @Slf4j
 public class JwtService {
-    private final RevokedTokenRepository revokedTokenRepository;
+    static final String USER_ID_CLAIM = "uid";
+    static final String ROLES_CLAIM = "roles";
+    static final String TOKEN_EPOCH_CLAIM = "tep";
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    private final RevocationIndex revocationIndex;
+    private final JwtKeyRing keyRing;
+    private final TokenEpochService tokenEpochService;
 
     @Value("${jwt.encryption-secret}")
     private String jwtEncryptionSecret;
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
-    }
-
-    private SecretKey getEncryptionKey() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtEncryptionSecret));
-    }
-
     public JwtAuthenticationDto generateJwtAuthenticationDto(String email) {
         JwtAuthenticationDto jwtAuthenticationDto = new JwtAuthenticationDto();
         jwtAuthenticationDto.setToken(generateJwtToken(email));
@@ -45,105 +41,140 @@ public class JwtService {
         return jwtAuthenticationDto;
     }
 
+    public JwtAuthenticationDto generateJwtAuthenticationDto(User user) {
+        JwtAuthenticationDto jwtAuthenticationDto = new JwtAuthenticationDto();
+        jwtAuthenticationDto.setToken(generateJwtToken(user));
+        jwtAuthenticationDto.setRefreshToken(generateRefreshJwtToken(user));
+        return jwtAuthenticationDto;
+    }
+
     public String generateJwtToken(String email) {
-        Date expiry = Date.from(LocalDateTime.now().plusMinutes(5).atZone(ZoneId.systemDefault()).toInstant());
+        return keyRing.sign(tokenBuilder(email, accessExpiry())).compact();
+    }
 
-        return Jwts.builder()
-                .subject(email)
-                .expiration(expiry)
-                .id(UUID.randomUUID().toString())
-                .signWith(getSigningKey(), Jwts.SIG.HS256)
-//                .encryptWith(getEncryptionKey(), Jwts.ENC.A256GCM)
+    public String generateJwtToken(User user) {
+        List<String> roles = user.getRoles() == null ? List.of() : user.getRoles().stream().map(Role::name).toList();
+
+        return keyRing.sign(tokenBuilder(user.getEmail(), accessExpiry())
+                        .claim(USER_ID_CLAIM, user.getUserId().toString())
+                        .claim(TOKEN_EPOCH_CLAIM, user.getTokenEpoch())
+                        .claim(ROLES_CLAIM, roles))
                 .compact();
     }
 
     public String generateRefreshJwtToken(String email) {
-        Date expiry = Date.from(LocalDateTime.now().plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
+        return keyRing.sign(tokenBuilder(email, refreshExpiry())).compact();
+    }
 
-        return Jwts.builder()
-                .subject(email)
-                .expiration(expiry)
-                .id(UUID.randomUUID().toString())
-                .signWith(getSigningKey(), Jwts.SIG.HS256)
-//                .encryptWith(getEncryptionKey(), Jwts.ENC.A256GCM)
+    public String generateRefreshJwtToken(User user) {
+        return keyRing.sign(tokenBuilder(user.getEmail(), refreshExpiry())
+                        .claim(USER_ID_CLAIM, user.getUserId().toString())
+                        .claim(TOKEN_EPOCH_CLAIM, user.getTokenEpoch()))
                 .compact();
     }
 
     public JwtAuthenticationDto refreshBaseToken(String email, String refreshToken) {
-        if (!validateRefreshToken(refreshToken, email)) {
-            throw new RuntimeException("Invalid or expired refresh token");
-        }
-
-        String hashedToken = DigestUtils.sha256Hex(refreshToken);
-
-        if (!revokedTokenRepository.existsByToken(hashedToken)) {
-            RevokedToken revoked = new RevokedToken();
-            revoked.setToken(hashedToken);
-            revoked.setRevokedAt(LocalDateTime.now());
-            revokedTokenRepository.save(revoked);
-        }
+        VerifiedToken verified = verify(refreshToken)
+                .filter(token -> token.subject().equals(email))
+                .orElseThrow(() -> new RuntimeException("Invalid or expired refresh token"));
+        revoke(verified);
+        return generateJwtAuthenticationDto(email);
+    }
 
-        JwtAuthenticationDto dto = new JwtAuthenticationDto();
-        dto.setToken(generateJwtToken(email));
-        dto.setRefreshToken(generateRefreshJwtToken(email));
-        return dto;
+    public JwtAuthenticationDto refreshBaseToken(User user, VerifiedToken verified) {
+        revoke(verified);
+        return generateJwtAuthenticationDto(user);
     }
 
-    public boolean validateJwtToken(String token) {
-        try {
-            String hashedToken = DigestUtils.sha256Hex(token);
-            if (revokedTokenRepository.existsByToken(hashedToken)) {
-                log.warn("Token is revoked");
-                return false;
-            }
+    public void revoke(VerifiedToken verified) {
+        revocationIndex.revoke(verified.jti(), verified.expiresAt());
+    }
 
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
+    private static Date accessExpiry() {
+        return Date.from(LocalDateTime.now().plusMinutes(5).atZone(ZoneId.systemDefault()).toInstant());
+    }
 
-            return true;
-        } catch (JwtException e) {
-            log.warn("Token validation failed: {}", e.getMessage());
-            return false;
-        }
+    private static Date refreshExpiry() {
+        return Date.from(LocalDateTime.now().plusDays(1).atZone(ZoneId.systemDefault()).toInstant());
     }
 
+    private static JwtBuilder tokenBuilder(String subject, Date expiry) {
+        return Jwts.builder()
+                .subject(subject)
+                .expiration(expiry)
+                .id(UUID.randomUUID().toString());
+    }
 
-    public boolean validateRefreshToken(String token, String email) {
+    public Optional<VerifiedToken> verify(String token) {
         try {
-            if (revokedTokenRepository.existsByToken(token)) {
-                log.warn("Refresh token is revoked");
-                return false;
-            }
-
-            Claims claims = Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
+            Claims claims = keyRing.parser()
                     .parseSignedClaims(token)
                     .getPayload();
 
-            String subject = claims.getSubject();
-            Date expiration = claims.getExpiration();
-
-            if (!subject.equals(email)) return false;
-            if (expiration.before(new Date())) return false;
+            if (claims.getId() == null) {
+                log.warn("Token has no jti");
+                return Optional.empty();
+            }
+            if (revocationIndex.isRevokedLegacy(token)) {
+                log.warn("Token is revoked by legacy token hash");
+                return Optional.empty();
+            }
+            String userIdClaim = claims.get(USER_ID_CLAIM, String.class);
+            VerifiedToken verified = new VerifiedToken(
+                    claims.getSubject(),
+                    userIdClaim == null ? null : UUID.fromString(userIdClaim),
+                    claims.get(TOKEN_EPOCH_CLAIM, Integer.class),
+                    UUID.fromString(claims.getId()),
+                    claims.getExpiration().toInstant(),
+                    readRoles(claims)
+            );
+            return isActive(verified) ? Optional.of(verified) : Optional.empty();
+        } catch (JwtException | IllegalArgumentException e) {
+            log.warn("Token validation failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
 
-            return true;
-        } catch (JwtException e) {
-            log.warn("Refresh token invalid: {}", e.getMessage());
+    // подпись уже проверена; срок, отзыв и эпоха пользователя проверяются заново при каждом вызове
+    public boolean isActive(VerifiedToken token) {
+        if (!token.expiresAt().isAfter(Instant.now())) {
+            return false;
+        }
+        if (revocationIndex.isRevoked(token.jti())) {
+            log.warn("Token is revoked: jti={}", token.jti());
             return false;
         }
+        if (token.userId() != null && token.tokenEpoch() != null
+                && !tokenEpochService.isCurrent(token.userId(), token.tokenEpoch())) {
+            log.warn("Token epoch is stale: userId={}", token.userId());
+            return false;
+        }
+        return true;
+    }
+
+    public boolean validateJwtToken(String token) {
+        return verify(token).isPresent();
+    }
+
+    public boolean validateRefreshToken(String token, String email) {
+        return verify(token)
+                .map(verified -> verified.subject().equals(email))
+                .orElse(false);
     }
 
     public String getEmailFromToken(String token) {
-        Claims claims = Jwts.parser()
-//                .decryptWith(getEncryptionKey())
-                .verifyWith(getSigningKey())
-                .build()
+        Claims claims = keyRing.parser()
                 .parseSignedClaims(token)
                 .getPayload();
 
         return claims.getSubject();
     }
+
+    private static Set<Role> readRoles(Claims claims) {
+        List<?> raw = claims.get(ROLES_CLAIM, List.class);
+        if (raw == null) return Set.of();
+        return raw.stream()
+                .map(role -> Role.valueOf(role.toString()))
+                .collect(Collectors.toUnmodifiableSet());
+    }
 }
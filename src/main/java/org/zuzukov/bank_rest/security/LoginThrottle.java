@@ -0,0 +1,97 @@
+package org.zuzukov.bank_rest.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zuzukov.bank_rest.exception.custom.TooManyRequestsException;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@Component
+@Slf4j
+public class LoginThrottle {
+    private final Limiter byEmail;
+    private final Limiter byIp;
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public LoginThrottle(MeterRegistry meterRegistry,
+                         @Value("${security.login-throttle.max-keys:100000}") long maxKeys,
+                         @Value("${security.login-throttle.per-email.capacity:5}") int emailCapacity,
+                         @Value("${security.login-throttle.per-email.refill-period:PT1M}") Duration emailRefill,
+                         @Value("${security.login-throttle.per-ip.capacity:50}") int ipCapacity,
+                         @Value("${security.login-throttle.per-ip.refill-period:PT1M}") Duration ipRefill) {
+        this(meterRegistry, maxKeys, emailCapacity, emailRefill, ipCapacity, ipRefill, System::nanoTime);
+    }
+
+    public LoginThrottle(MeterRegistry meterRegistry, long maxKeys,
+                         int emailCapacity, Duration emailRefill,
+                         int ipCapacity, Duration ipRefill,
+                         LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.byEmail = new Limiter("email", maxKeys, emailCapacity, emailRefill, meterRegistry);
+        this.byIp = new Limiter("ip", maxKeys, ipCapacity, ipRefill, meterRegistry);
+    }
+
+    // вызывается до поиска пользователя и проверки пароля, чтобы отклонённая попытка не стоила хеширования
+    public void acquire(String email, String clientIp) {
+        long now = nanoClock.getAsLong();
+        if (clientIp != null) {
+            byIp.acquire(clientIp, now);
+        }
+        if (email != null) {
+            byEmail.acquire(email.toLowerCase(Locale.ROOT), now);
+        }
+    }
+
+    private static final class Limiter {
+        private final String dimension;
+        private final Cache<String, AtomicLong> buckets;
+        private final long emissionIntervalNanos;
+        private final long burstNanos;
+        private final Counter throttled;
+
+        Limiter(String dimension, long maxKeys, int capacity, Duration refillPeriod, MeterRegistry meterRegistry) {
+            this.dimension = dimension;
+            this.emissionIntervalNanos = refillPeriod.toNanos() / capacity;
+            this.burstNanos = refillPeriod.toNanos();
+            // ведро, к которому не обращались дольше периода пополнения, снова полное, его можно забыть
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maxKeys)
+                    .expireAfterAccess(refillPeriod)
+                    .build();
+            this.throttled = Counter.builder("auth.login.throttled")
+                    .tag("dimension", dimension)
+                    .register(meterRegistry);
+        }
+
+        // GCRA: в одном AtomicLong хранится теоретическое время, когда ведро снова станет полным
+        void acquire(String key, long now) {
+            AtomicLong fullAt = buckets.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+            while (true) {
+                long current = fullAt.get();
+                long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                long next = base + emissionIntervalNanos;
+                long debt = next - now;
+                if (debt > burstNanos) {
+                    throttled.increment();
+                    long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(debt - burstNanos + 999_999_999L));
+                    log.warn("Login throttled: {}={}, retryAfter={}s", dimension, key, retryAfter);
+                    throw new TooManyRequestsException("Too many login attempts, retry later", retryAfter);
+                }
+                if (fullAt.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+}
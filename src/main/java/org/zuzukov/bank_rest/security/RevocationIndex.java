@@ -0,0 +1,216 @@
+package org.zuzukov.bank_rest.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zuzukov.bank_rest.repository.LegacyRevokedTokenReader;
+import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
+import org.zuzukov.bank_rest.repository.RevokedTokenWriter;
+import org.zuzukov.bank_rest.util.BloomFilter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@Slf4j
+public class RevocationIndex {
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final RevokedTokenWriter revokedTokenWriter;
+    private final LegacyRevokedTokenReader legacyReader;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final Duration syncOverlap;
+    private final int batchSize;
+
+    private final Counter negativeLookups;
+    private final Counter falsePositives;
+    private final Counter confirmedRevoked;
+    private final Counter flushedRows;
+
+    // отозванные на этом узле, но ещё не записанные в БД токены: jti -> expiresAt
+    private final Map<UUID, LocalDateTime> pending = new ConcurrentHashMap<>();
+    // отзывы по SHA-256 токена из таблицы до перехода на jti: hash -> expiresAt, пусто после их истечения
+    private final Map<String, LocalDateTime> legacy = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter filter;
+    private volatile LocalDateTime lastSync;
+
+    public RevocationIndex(RevokedTokenRepository revokedTokenRepository,
+                           RevokedTokenWriter revokedTokenWriter,
+                           LegacyRevokedTokenReader legacyReader,
+                           MeterRegistry meterRegistry,
+                           @Value("${jwt.revocation.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                           @Value("${jwt.revocation.sync-overlap:PT1M}") Duration syncOverlap,
+                           @Value("${jwt.revocation.batch-size:500}") int batchSize) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.revokedTokenWriter = revokedTokenWriter;
+        this.legacyReader = legacyReader;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.syncOverlap = syncOverlap;
+        this.batchSize = batchSize;
+        this.filter = BloomFilter.create(expectedInsertions, falsePositiveRate);
+
+        this.negativeLookups = lookupCounter(meterRegistry, "negative");
+        this.falsePositives = lookupCounter(meterRegistry, "false_positive");
+        this.confirmedRevoked = lookupCounter(meterRegistry, "revoked");
+        this.flushedRows = Counter.builder("jwt.revocation.flushed.rows").register(meterRegistry);
+        Gauge.builder("jwt.revocation.pending", pending, Map::size)
+                .description("Revocations applied in memory but not yet persisted")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.index.size", this, index -> index.filter.insertions())
+                .description("Revoked token ids loaded into the node-local index")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.index.bits", this, index -> index.filter.bitCount())
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.index.expected.fpp", this, index -> index.filter.expectedFalsePositiveRate())
+                .description("False-positive probability estimated from the filter fill ratio")
+                .register(meterRegistry);
+        Gauge.builder("jwt.revocation.index.observed.fpp", this, RevocationIndex::observedFalsePositiveRate)
+                .description("Share of filter hits that the database did not confirm")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("jwt.revocation.index.lookups")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void load() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        List<UUID> jtis = revokedTokenRepository.findActiveJtis(startedAt);
+        long capacity = Math.max(expectedInsertions, jtis.size() * 2L);
+        BloomFilter rebuilt = BloomFilter.create(capacity, falsePositiveRate);
+        jtis.forEach(jti -> put(rebuilt, jti));
+        // ещё не записанных в БД отзывов нет в выборке, без них новый фильтр пропустил бы отозванный токен
+        pending.keySet().forEach(jti -> put(rebuilt, jti));
+        this.filter = rebuilt;
+        this.lastSync = startedAt;
+        loadLegacy(startedAt);
+        log.info("Revocation index loaded: entries={}, bits={}, legacy={}", jtis.size(), rebuilt.bitCount(), legacy.size());
+    }
+
+    private void loadLegacy(LocalDateTime now) {
+        try {
+            Map<String, LocalDateTime> active = legacyReader.findActive(now);
+            legacy.putAll(active);
+            legacy.keySet().retainAll(active.keySet());
+        } catch (DataAccessException e) {
+            // таблицу уже удалила миграция core-revoked-legacy-drop-1
+            legacy.clear();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:5000}",
+            initialDelayString = "${jwt.revocation.sync-interval-ms:5000}")
+    public void sync() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = (lastSync == null ? startedAt : lastSync).minus(syncOverlap);
+        List<UUID> jtis = revokedTokenRepository.findJtisRevokedSince(since);
+        BloomFilter current = filter;
+        jtis.forEach(jti -> put(current, jti));
+        lastSync = startedAt;
+        legacy.values().removeIf(expiresAt -> !expiresAt.isAfter(startedAt));
+
+        if (current.insertions() > capacityOf(current)) {
+            log.info("Revocation index is over capacity, rebuilding: entries={}", current.insertions());
+            load();
+        }
+    }
+
+    public boolean isRevoked(UUID jti) {
+        // pending проверяется до фильтра: отзыв мог попасть в старый фильтр, пока load() собирал новый
+        if (pending.containsKey(jti)) {
+            confirmedRevoked.increment();
+            return true;
+        }
+        if (!filter.mightContain(jti.getMostSignificantBits(), jti.getLeastSignificantBits())) {
+            negativeLookups.increment();
+            return false;
+        }
+        boolean revoked = revokedTokenRepository.existsByJti(jti);
+        (revoked ? confirmedRevoked : falsePositives).increment();
+        return revoked;
+    }
+
+    // хеш считается, только пока есть неистёкшие отзывы из старой таблицы
+    public boolean isRevokedLegacy(String token) {
+        return !legacy.isEmpty() && legacy.containsKey(DigestUtils.sha256Hex(token));
+    }
+
+    // отзыв сразу виден на этом узле, в БД запись попадает пачкой при ближайшем flush
+    public void revoke(UUID jti, Instant expiresAt) {
+        pending.putIfAbsent(jti, LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()));
+        markRevoked(jti);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.flush-interval-ms:200}")
+    @PreDestroy
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<UUID, LocalDateTime> batch = new LinkedHashMap<>();
+        for (Map.Entry<UUID, LocalDateTime> entry : pending.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            if (batch.size() == batchSize) {
+                write(batch);
+                batch.clear();
+            }
+        }
+        write(batch);
+    }
+
+    private void write(Map<UUID, LocalDateTime> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            // revoked_at ставится в момент записи, чтобы sync() других узлов не пропустил строку из-за задержки flush
+            int inserted = revokedTokenWriter.insertIgnoringDuplicates(batch, LocalDateTime.now());
+            batch.forEach(pending::remove);
+            flushedRows.increment(inserted);
+        } catch (DataAccessException e) {
+            // записи остаются в pending и будут записаны следующим flush
+            log.error("Failed to persist {} revoked tokens, will retry: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    public void markRevoked(UUID jti) {
+        put(filter, jti);
+    }
+
+    private double observedFalsePositiveRate() {
+        double hits = falsePositives.count() + confirmedRevoked.count();
+        return hits == 0 ? 0 : falsePositives.count() / hits;
+    }
+
+    private long capacityOf(BloomFilter bloom) {
+        // ёмкость, при которой фильтр выдерживает заданный false-positive rate
+        double ln2 = Math.log(2);
+        return (long) (bloom.bitCount() * ln2 * ln2 / -Math.log(falsePositiveRate));
+    }
+
+    // jti — случайный UUID, его половины уже равномерно распределены и годятся как хеши фильтра
+    private static void put(BloomFilter bloom, UUID jti) {
+        bloom.put(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,61 @@
+package org.zuzukov.bank_rest.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.service.CacheInvalidationBus;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Service
+@Slf4j
+public class TokenEpochService {
+    static final String CACHE_NAME = "tokenEpoch";
+    private static final int DELETED_USER = -1;
+
+    private final UserRepository userRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final LoadingCache<UUID, Integer> epochs;
+
+    public TokenEpochService(UserRepository userRepository,
+                             CacheInvalidationBus invalidationBus,
+                             MeterRegistry meterRegistry,
+                             @Value("${jwt.token-epoch-cache.max-size:100000}") long maxSize,
+                             @Value("${jwt.token-epoch-cache.ttl:PT10M}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.invalidationBus = invalidationBus;
+        this.epochs = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(this::load);
+        CaffeineCacheMetrics.monitor(meterRegistry, epochs, CACHE_NAME);
+        invalidationBus.subscribe(CACHE_NAME, key -> epochs.invalidate(UUID.fromString(key)));
+    }
+
+    public boolean isCurrent(UUID userId, int tokenEpoch) {
+        return epochs.get(userId) == tokenEpoch;
+    }
+
+    // увеличение эпохи делает недействительными все ранее выданные access и refresh токены пользователя
+    public void bump(User user) {
+        user.setTokenEpoch(user.getTokenEpoch() + 1);
+        invalidate(user.getUserId());
+        log.info("Token epoch bumped: userId={}, epoch={}", user.getUserId(), user.getTokenEpoch());
+    }
+
+    public void invalidate(UUID userId) {
+        invalidationBus.publish(CACHE_NAME, userId.toString());
+    }
+
+    private Integer load(UUID userId) {
+        return userRepository.findTokenEpochByUserId(userId).orElse(DELETED_USER);
+    }
+}
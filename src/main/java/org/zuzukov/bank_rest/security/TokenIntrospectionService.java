@@ -0,0 +1,73 @@
+package org.zuzukov.bank_rest.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.zuzukov.bank_rest.dto.TokenIntrospectionDto;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@Service
+public class TokenIntrospectionService {
+    static final String CACHE_NAME = "tokenIntrospection";
+
+    private final JwtService jwtService;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public TokenIntrospectionService(JwtService jwtService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${jwt.introspection.cache-max-size:100000}") long maxSize) {
+        this.jwtService = jwtService;
+        // запись живёт ровно до exp токена, дальше токен всё равно неактивен
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.<String, VerifiedToken>creating(
+                        (token, verified) -> remainingLifetime(verified)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, CACHE_NAME);
+    }
+
+    public TokenIntrospectionDto introspect(String token) {
+        if (token == null || token.isBlank()) {
+            return TokenIntrospectionDto.inactive();
+        }
+
+        VerifiedToken cached = verifiedTokens.getIfPresent(token);
+        if (cached != null) {
+            // кешируется только проверка подписи и разбор claims; отзыв и эпоха — in-memory проверки на каждый запрос
+            if (jwtService.isActive(cached)) {
+                return toDto(cached);
+            }
+            verifiedTokens.invalidate(token);
+            return TokenIntrospectionDto.inactive();
+        }
+
+        Optional<VerifiedToken> verified = jwtService.verify(token);
+        verified.ifPresent(v -> verifiedTokens.put(token, v));
+        return verified.map(TokenIntrospectionService::toDto).orElseGet(TokenIntrospectionDto::inactive);
+    }
+
+    private static Duration remainingLifetime(VerifiedToken verified) {
+        Duration remaining = Duration.between(Instant.now(), verified.expiresAt());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private static TokenIntrospectionDto toDto(VerifiedToken verified) {
+        TokenIntrospectionDto dto = new TokenIntrospectionDto();
+        dto.setActive(true);
+        dto.setSub(verified.subject());
+        dto.setUid(verified.userId() == null ? null : verified.userId().toString());
+        dto.setJti(verified.jti().toString());
+        dto.setExp(verified.expiresAt().getEpochSecond());
+        dto.setRoles(verified.roles().stream().map(Enum::name).collect(Collectors.toSet()));
+        return dto;
+    }
+}
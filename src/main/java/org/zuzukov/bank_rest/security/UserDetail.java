@@ -1,28 +1,48 @@
 package org.zuzukov.bank_rest.security;
 
-import jakarta.persistence.Column;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.stereotype.Service;
 import org.zuzukov.bank_rest.entity.Role;
 import org.zuzukov.bank_rest.entity.User;
 
 import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 public class UserDetail implements UserDetails {
 
-    private final User user;
+    private final UUID userId;
+    private final String email;
+    private final String password;
+    private final Set<Role> roles;
 
     public UserDetail(User user) {
-        this.user = user;
+        this(user.getUserId(), user.getEmail(), user.getPassword(), user.getRoles());
+    }
+
+    private UserDetail(UUID userId, String email, String password, Set<Role> roles) {
+        this.userId = userId;
+        this.email = email;
+        this.password = password;
+        this.roles = roles == null ? Set.of() : Set.copyOf(roles);
+    }
+
+    public static UserDetail fromToken(VerifiedToken token) {
+        return new UserDetail(token.userId(), token.subject(), null, token.roles());
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public Set<Role> getRoles() {
+        return roles;
     }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        Set<Role> roles = user.getRoles();
         return roles.stream()
                 .map(role -> new SimpleGrantedAuthority(role.name()))
                 .collect(Collectors.toSet());
@@ -30,12 +50,12 @@ public class UserDetail implements UserDetails {
 
     @Override
     public String getPassword() {
-        return user.getPassword();
+        return password;
     }
 
     @Override
     public String getUsername() {
-        return user.getEmail();
+        return email;
     }
 
 
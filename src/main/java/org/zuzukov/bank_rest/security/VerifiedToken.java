@@ -0,0 +1,18 @@
+package org.zuzukov.bank_rest.security;
+
+import org.zuzukov.bank_rest.entity.Role;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+
+public record VerifiedToken(String subject,
+                            UUID userId,
+                            Integer tokenEpoch,
+                            UUID jti,
+                            Instant expiresAt,
+                            Set<Role> roles) {
+    public VerifiedToken {
+        roles = roles == null ? Set.of() : Set.copyOf(roles);
+    }
+}
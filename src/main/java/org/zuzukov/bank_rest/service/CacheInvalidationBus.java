@@ -0,0 +1,97 @@
+package org.zuzukov.bank_rest.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zuzukov.bank_rest.entity.CacheInvalidation;
+import org.zuzukov.bank_rest.repository.CacheInvalidationRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Межузловая инвалидация локальных кешей через таблицу cache_invalidations
+// (замена pub/sub брокеру, пока его нет в инфраструктуре).
+@Service
+@Slf4j
+public class CacheInvalidationBus {
+    private final CacheInvalidationRepository repository;
+    private final Duration pollOverlap;
+    private final Duration retention;
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    // события из окна перекрытия, уже применённые на этом узле: id -> createdAt
+    private final Map<Long, LocalDateTime> dispatched = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime lastPoll = LocalDateTime.now();
+
+    public CacheInvalidationBus(CacheInvalidationRepository repository,
+                                @Value("${cache.invalidation.poll-overlap:PT1M}") Duration pollOverlap,
+                                @Value("${cache.invalidation.retention:PT1H}") Duration retention) {
+        this.repository = repository;
+        this.pollOverlap = pollOverlap;
+        this.retention = retention;
+    }
+
+    public void subscribe(String cacheName, Consumer<String> listener) {
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void publish(String cacheName, String key) {
+        CacheInvalidation event = new CacheInvalidation();
+        event.setCacheName(cacheName);
+        event.setCacheKey(key);
+        event.setCreatedAt(LocalDateTime.now());
+        repository.save(event);
+        // своё событие применяется локально ниже, poll не должен повторять его
+        if (event.getId() != null) {
+            dispatched.put(event.getId(), event.getCreatedAt());
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // локальный кеш чистим после коммита, иначе параллельный запрос успеет закешировать старое состояние
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(cacheName, key);
+                }
+            });
+        } else {
+            dispatch(cacheName, key);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cache.invalidation.poll-interval-ms:2000}")
+    public void poll() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        // перекрытие нужно только для событий, закоммиченных позже своего created_at;
+        // уже применённые события из окна пропускаются, иначе каждое вытесняло бы ключ на каждом опросе
+        List<CacheInvalidation> events = repository.findAllByCreatedAtAfter(lastPoll.minus(pollOverlap));
+        for (CacheInvalidation event : events) {
+            if (dispatched.putIfAbsent(event.getId(), event.getCreatedAt()) == null) {
+                dispatch(event.getCacheName(), event.getCacheKey());
+            }
+        }
+        lastPoll = startedAt;
+        LocalDateTime windowStart = startedAt.minus(pollOverlap);
+        dispatched.values().removeIf(createdAt -> !createdAt.isAfter(windowStart));
+    }
+
+    @Scheduled(fixedDelayString = "${cache.invalidation.purge-interval-ms:600000}")
+    public void purge() {
+        int deleted = repository.deleteAllCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0) {
+            log.debug("Purged {} cache invalidation events", deleted);
+        }
+    }
+
+    private void dispatch(String cacheName, String key) {
+        listeners.getOrDefault(cacheName, List.of()).forEach(listener -> listener.accept(key));
+    }
+}
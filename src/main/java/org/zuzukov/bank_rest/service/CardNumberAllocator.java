@@ -0,0 +1,73 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zuzukov.bank_rest.repository.CardNumberSequence;
+import org.zuzukov.bank_rest.util.Luhn;
+
+@Component
+@Slf4j
+public class CardNumberAllocator {
+    private static final int PAN_LENGTH = 16;
+
+    private final CardNumberSequence sequence;
+    private final String bin;
+    private final int blockSize;
+    private final int accountDigits;
+    private final long accountLimit;
+    private final Counter reservedBlocks;
+
+    // текущий блок номеров счёта [next, limit), зарезервированный за этим узлом
+    private long next;
+    private long limit;
+
+    public CardNumberAllocator(CardNumberSequence sequence,
+                               MeterRegistry meterRegistry,
+                               @Value("${card.issuing.bin:400000}") String bin,
+                               @Value("${card.issuing.block-size:1000}") int blockSize) {
+        if (!bin.matches("\\d{6,8}")) {
+            throw new IllegalArgumentException("card.issuing.bin must contain 6 to 8 digits: " + bin);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("card.issuing.block-size must be positive: " + blockSize);
+        }
+        this.sequence = sequence;
+        this.bin = bin;
+        this.blockSize = blockSize;
+        this.accountDigits = PAN_LENGTH - 1 - bin.length();
+        this.accountLimit = (long) Math.pow(10, accountDigits);
+        this.reservedBlocks = Counter.builder("card.issuing.blocks.reserved").register(meterRegistry);
+    }
+
+    // номера с этим BIN выдаёт только аллокатор, иначе next() мог бы выдать уже занятый номер
+    public boolean isIssuingRange(String number) {
+        return number.startsWith(bin);
+    }
+
+    // номер = BIN | номер счёта из блока | контрольная цифра Луна; уникален без проверки по БД
+    public synchronized String next() {
+        if (next == limit) {
+            reserveBlock();
+        }
+        StringBuilder pan = new StringBuilder(PAN_LENGTH).append(bin);
+        String account = Long.toString(next++);
+        pan.append("0".repeat(accountDigits - account.length())).append(account);
+        return pan.append(Luhn.checkDigit(pan)).toString();
+    }
+
+    private void reserveBlock() {
+        long block = sequence.nextBlock();
+        // блоки не пересекаются, пока block-size не уменьшают: у последовательности нет памяти о прежнем размере
+        long start = block * blockSize;
+        if (start + blockSize > accountLimit) {
+            throw new IllegalStateException("Card number range for BIN " + bin + " is exhausted");
+        }
+        next = start;
+        limit = start + blockSize;
+        reservedBlocks.increment();
+        log.info("Card number block reserved: bin={}, block={}, range=[{}, {})", bin, block, start, limit);
+    }
+}
@@ -7,34 +7,65 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.zuzukov.bank_rest.dto.card.BatchTransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.BatchTransferResultDto;
 import org.zuzukov.bank_rest.dto.card.CardCreateDto;
 import org.zuzukov.bank_rest.dto.card.CardDto;
+import org.zuzukov.bank_rest.dto.card.CardIssueDto;
+import org.zuzukov.bank_rest.dto.card.CardTransactionDto;
+import org.zuzukov.bank_rest.dto.card.CardTransactionPageDto;
 import org.zuzukov.bank_rest.dto.card.TransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.TransferResultDto;
 import org.zuzukov.bank_rest.entity.Card;
 import org.zuzukov.bank_rest.entity.CardStatus;
 import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.exception.custom.BadRequestException;
 import org.zuzukov.bank_rest.exception.custom.ConflictException;
 import org.zuzukov.bank_rest.exception.custom.NotFoundException;
+import org.zuzukov.bank_rest.util.CardFingerprintRehashScheduler;
 import org.zuzukov.bank_rest.util.mapper.CardMapper;
 import org.zuzukov.bank_rest.repository.CardRepository;
+import org.zuzukov.bank_rest.repository.CardTransactionLedger;
 import org.zuzukov.bank_rest.repository.UserRepository;
 import org.zuzukov.bank_rest.util.validator.CardTransferValidator;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CardService {
+    private static final int MAX_TRANSACTIONS_PAGE = 500;
+    // порядок uuid в PostgreSQL — беззнаковое побайтовое сравнение; UUID.compareTo сравнивает половины со знаком
+    private static final Comparator<UUID> LOCK_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
     private final CryptoService cryptoService;
     private final CardMapper cardMapper;
     private final CardTransferValidator transferValidator;
+    private final CardFingerprintRehashScheduler fingerprintRehash;
+    private final CardNumberAllocator cardNumberAllocator;
+    private final CardTransferExecutor transferExecutor;
+    private final CardTransactionLedger ledger;
+    private final TransferIdempotency idempotency;
 
     @Value("${card.renew.years:3}")
     private Integer yearPlus;
@@ -43,26 +74,60 @@ public class CardService {
     public CardDto adminCreate(CardCreateDto dto) {
         User owner = userRepository.findByEmail(dto.getOwnerEmail())
                 .orElseThrow(() -> new IllegalArgumentException("Owner not found"));
-        String cardHash = cryptoService.hashCardNumber(dto.getCardNumber());
-        if (cardRepository.existsByNumberHash(cardHash)) {
+        if (dto.getCardNumber() == null) {
+            // номер выпускается сервером: уникален по построению, проверка дубликата не нужна
+            Card card = cardRepository.save(newCard(owner, cardNumberAllocator.next(), null,
+                    dto.getExpiryYear(), dto.getExpiryMonth(), dto.getInitialBalance()));
+            log.info("Card issued for owner={}, cardId={}, last4={}", owner.getEmail(), card.getId(), card.getLast4());
+            return cardMapper.toDto(card);
+        }
+
+        if (cardNumberAllocator.isIssuingRange(dto.getCardNumber())) {
+            throw new IllegalArgumentException("Card number belongs to the issuing BIN, omit it to have the number issued");
+        }
+        String cardHash = cryptoService.fingerprint(dto.getCardNumber());
+        if (cardRepository.existsByNumberHash(cardHash)
+                || (fingerprintRehash.legacyHashesPending()
+                    && cardRepository.existsByNumberHash(cryptoService.legacyHashCardNumber(dto.getCardNumber())))) {
             throw new IllegalArgumentException("Card number already exists");
         }
 
+        Card card = cardRepository.save(newCard(owner, dto.getCardNumber(), cardHash,
+                dto.getExpiryYear(), dto.getExpiryMonth(), dto.getInitialBalance()));
 
+        log.info("Card created for owner={}, cardId={}, last4={}", owner.getEmail(), card.getId(), card.getLast4());
+        return cardMapper.toDto(card);
+    }
+
+    @Transactional
+    public List<CardDto> adminIssue(CardIssueDto dto) {
+        User owner = userRepository.findByEmail(dto.getOwnerEmail())
+                .orElseThrow(() -> new IllegalArgumentException("Owner not found"));
+        List<Card> cards = new ArrayList<>(dto.getCount());
+        for (int i = 0; i < dto.getCount(); i++) {
+            cards.add(newCard(owner, cardNumberAllocator.next(), null,
+                    dto.getExpiryYear(), dto.getExpiryMonth(), dto.getInitialBalance()));
+        }
+        // вставки уходят пачками hibernate.jdbc.batch_size, id генерируются без обращения к БД
+        List<Card> saved = cardRepository.saveAll(cards);
+        log.info("Cards issued for owner={}, count={}", owner.getEmail(), saved.size());
+        return saved.stream().map(cardMapper::toDto).toList();
+    }
+
+    private Card newCard(User owner, String number, String numberHash,
+                         int expiryYear, int expiryMonth, BigDecimal initialBalance) {
         Card card = new Card();
         card.setOwner(owner);
-        card.setNumberEncrypted(cryptoService.encrypt(dto.getCardNumber()));
-        card.setLast4(dto.getCardNumber().substring(12));
-        card.setNumberEncrypted(cryptoService.encrypt(dto.getCardNumber()));
-        card.setNumberHash(cardHash);
-        YearMonth ym = YearMonth.of(dto.getExpiryYear(), dto.getExpiryMonth());
+        card.setLast4(number.substring(12));
+        card.setNumberEncrypted(cryptoService.encrypt(number));
+        card.setNumberKeyVersion(cryptoService.activeKeyVersion());
+        card.setNumberHash(numberHash == null ? cryptoService.fingerprint(number) : numberHash);
+        card.setNumberHashVersion(CryptoService.FINGERPRINT_VERSION);
+        YearMonth ym = YearMonth.of(expiryYear, expiryMonth);
         card.setExpiry(ym.atEndOfMonth());
         card.setStatus(CardStatus.ACTIVE);
-        card.setBalance(dto.getInitialBalance() == null ? BigDecimal.ZERO : dto.getInitialBalance());
-        card = cardRepository.save(card);
-
-        log.info("Card created for owner={}, cardId={}, last4={}", owner.getEmail(), card.getId(), card.getLast4());
-        return cardMapper.toDto(card);
+        card.setBalance(initialBalance == null ? BigDecimal.ZERO : initialBalance);
+        return card;
     }
 
     @Transactional
@@ -131,15 +196,248 @@ public class CardService {
         log.info("User requested block: user={}, cardId={}", userEmail, cardId);
     }
 
-    @Transactional
-    public void transferBetweenOwn(String userEmail, TransferRequestDto transfer) {
+    public TransferResultDto transferBetweenOwn(String userEmail, TransferRequestDto transfer) {
+        return transferBetweenOwn(userEmail, transfer, null);
+    }
+
+    public TransferResultDto transferBetweenOwn(String userEmail, TransferRequestDto transfer, String idempotencyKey) {
         transferValidator.ensureNotSameCard(transfer.getFromCardId(), transfer.getToCardId());
+        if (idempotencyKey == null) {
+            return transferExecutor.execute(() -> new TransferResultDto(transfer(userEmail, transfer, UUID.randomUUID()), false));
+        }
 
-        Card from = cardRepository.findByIdAndOwnerEmail(transfer.getFromCardId(), userEmail)
-                .orElseThrow(() -> new NotFoundException("From card not found"));
-        Card to = cardRepository.findByIdAndOwnerEmail(transfer.getToCardId(), userEmail)
-                .orElseThrow(() -> new NotFoundException("To card not found"));
+        idempotency.validateKey(idempotencyKey);
+        String requestHash = idempotency.requestHash(transfer);
+        Optional<UUID> cached = idempotency.cached(userEmail, idempotencyKey, requestHash);
+        if (cached.isPresent()) {
+            return new TransferResultDto(cached.get(), true);
+        }
+        TransferResultDto result = transferExecutor.execute(() -> {
+            UUID transferId = UUID.randomUUID();
+            // ключ занимается в транзакции перевода: откат перевода освобождает ключ, повтор карты не трогает
+            Optional<UUID> previous = idempotency.claim(userEmail, idempotencyKey, requestHash, transferId);
+            if (previous.isPresent()) {
+                log.info("Idempotent transfer replayed: user={}, transferId={}", userEmail, previous.get());
+                return new TransferResultDto(previous.get(), true);
+            }
+            return new TransferResultDto(transfer(userEmail, transfer, transferId), false);
+        });
+        if (!result.isReplayed()) {
+            idempotency.remember(userEmail, idempotencyKey, requestHash, result.getTransferId());
+        }
+        return result;
+    }
 
+    private UUID transfer(String userEmail, TransferRequestDto transfer, UUID transferId) {
+        if (transferExecutor.mode() == CardTransferExecutor.LockingMode.ATOMIC) {
+            transferAtomic(userEmail, transfer, transferId);
+        } else {
+            transferLocked(userEmail, transfer, transferId);
+        }
+        return transferId;
+    }
+
+    private void transferLocked(String userEmail, TransferRequestDto transfer, UUID transferId) {
+        Card from;
+        Card to;
+        if (transferExecutor.mode() == CardTransferExecutor.LockingMode.PESSIMISTIC) {
+            // карты блокируются по возрастанию UUID, как ORDER BY id в пакетном переводе:
+            // встречные переводы A→B и B→A не ждут друг друга по кругу
+            boolean fromFirst = LOCK_ORDER.compare(transfer.getFromCardId(), transfer.getToCardId()) < 0;
+            UUID firstId = fromFirst ? transfer.getFromCardId() : transfer.getToCardId();
+            UUID secondId = fromFirst ? transfer.getToCardId() : transfer.getFromCardId();
+            List<Optional<Card>> locked = transferExecutor.timeLockWait(() -> List.of(
+                    cardRepository.findForUpdateByIdAndOwnerEmail(firstId, userEmail),
+                    cardRepository.findForUpdateByIdAndOwnerEmail(secondId, userEmail)));
+            from = locked.get(fromFirst ? 0 : 1).orElseThrow(() -> new NotFoundException("From card not found"));
+            to = locked.get(fromFirst ? 1 : 0).orElseThrow(() -> new NotFoundException("To card not found"));
+        } else {
+            // без блокировок: конфликт обнаружит @Version при commit, и перевод будет повторён
+            from = cardRepository.findByIdAndOwnerEmail(transfer.getFromCardId(), userEmail)
+                    .orElseThrow(() -> new NotFoundException("From card not found"));
+            to = cardRepository.findByIdAndOwnerEmail(transfer.getToCardId(), userEmail)
+                    .orElseThrow(() -> new NotFoundException("To card not found"));
+        }
+
+        BigDecimal amount = transfer.getAmount();
+        validateTransfer(from, to, amount);
+
+        from.setBalance(from.getBalance().subtract(amount));
+        to.setBalance(to.getBalance().add(amount));
+        recordTransfer(transferId, from.getId(), to.getId(), amount);
+
+        log.info("Transfer: user={}, transferId={}, fromCard={}, toCard={}, amount={}",
+                userEmail, transferId, from.getId(), to.getId(), amount);
+    }
+
+    // два условных UPDATE без загрузки сущностей; проверки статуса, срока и баланса выполняет сама БД
+    private void transferAtomic(String userEmail, TransferRequestDto transfer, UUID transferId) {
+        UUID fromId = transfer.getFromCardId();
+        UUID toId = transfer.getToCardId();
+        BigDecimal amount = transfer.getAmount();
+        LocalDate today = LocalDate.now();
+
+        // строки обновляются в том же порядке UUID, что и в pessimistic-режиме, поэтому встречные переводы не дают deadlock
+        boolean applied = transferExecutor.timeLockWait(() -> LOCK_ORDER.compare(fromId, toId) < 0
+                ? cardRepository.debitIfAllowed(fromId, userEmail, amount, today) == 1
+                        && cardRepository.creditIfAllowed(toId, userEmail, amount, today) == 1
+                : cardRepository.creditIfAllowed(toId, userEmail, amount, today) == 1
+                        && cardRepository.debitIfAllowed(fromId, userEmail, amount, today) == 1);
+        if (!applied) {
+            // медленный путь только для отказа: загружаем карты, чтобы вернуть ту же ошибку, что и обычный перевод
+            Card from = cardRepository.findByIdAndOwnerEmail(fromId, userEmail)
+                    .orElseThrow(() -> new NotFoundException("From card not found"));
+            Card to = cardRepository.findByIdAndOwnerEmail(toId, userEmail)
+                    .orElseThrow(() -> new NotFoundException("To card not found"));
+            validateTransfer(from, to, amount);
+            // все проверки прошли — значит, карту изменили между UPDATE и чтением
+            throw new ConflictException("Transfer conflicted with a concurrent update, please retry");
+        }
+        recordTransfer(transferId, fromId, toId, amount);
+
+        log.info("Transfer: user={}, transferId={}, fromCard={}, toCard={}, amount={}",
+                userEmail, transferId, fromId, toId, amount);
+    }
+
+    public BatchTransferResultDto transferBatch(String userEmail, BatchTransferRequestDto batch) {
+        try {
+            return transferExecutor.execute(() -> applyBatch(userEmail, batch));
+        } catch (BatchRolledBackException e) {
+            return e.result;
+        }
+    }
+
+    private BatchTransferResultDto applyBatch(String userEmail, BatchTransferRequestDto batch) {
+        List<TransferRequestDto> transfers = batch.getTransfers();
+        Set<UUID> cardIds = new HashSet<>();
+        for (TransferRequestDto transfer : transfers) {
+            cardIds.add(transfer.getFromCardId());
+            cardIds.add(transfer.getToCardId());
+        }
+        // все карты пакета читаются и блокируются одним запросом в порядке id
+        Map<UUID, Card> cards = new HashMap<>();
+        transferExecutor.timeLockWait(() -> cardRepository.findAllForUpdateByIdInAndOwnerEmail(cardIds, userEmail))
+                .forEach(card -> cards.put(card.getId(), card));
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        List<CardTransactionLedger.Posting> postings = new ArrayList<>(transfers.size() * 2);
+        List<BatchTransferResultDto.Item> items = new ArrayList<>(transfers.size());
+        int rejected = 0;
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequestDto transfer = transfers.get(i);
+            BatchTransferResultDto.Item item = new BatchTransferResultDto.Item();
+            item.setIndex(i);
+            try {
+                transferValidator.ensureNotSameCard(transfer.getFromCardId(), transfer.getToCardId());
+                Card from = Optional.ofNullable(cards.get(transfer.getFromCardId()))
+                        .orElseThrow(() -> new NotFoundException("From card not found"));
+                Card to = Optional.ofNullable(cards.get(transfer.getToCardId()))
+                        .orElseThrow(() -> new NotFoundException("To card not found"));
+                BigDecimal amount = transfer.getAmount();
+                // проверка идёт по балансу с учётом предыдущих переводов пакета
+                validateTransfer(from, to, amount);
+
+                // дельты копятся на сущностях: карта уходит одним UPDATE при flush, сколько бы переводов её ни касалось
+                from.setBalance(from.getBalance().subtract(amount));
+                to.setBalance(to.getBalance().add(amount));
+                UUID transferId = UUID.randomUUID();
+                postings.addAll(postings(transferId, from.getId(), to.getId(), amount, now));
+                item.setStatus(BatchTransferResultDto.Status.APPLIED);
+                item.setTransferId(transferId);
+            } catch (BadRequestException | ConflictException | NotFoundException e) {
+                item.setStatus(BatchTransferResultDto.Status.REJECTED);
+                item.setMessage(e.getMessage());
+                rejected++;
+            }
+            items.add(item);
+        }
+
+        BatchTransferResultDto result = new BatchTransferResultDto();
+        result.setMode(batch.getMode());
+        result.setRejected(rejected);
+        result.setItems(items);
+        if (rejected > 0 && batch.getMode() == BatchTransferRequestDto.Mode.ALL_OR_NOTHING) {
+            items.stream()
+                    .filter(item -> item.getStatus() == BatchTransferResultDto.Status.APPLIED)
+                    .forEach(item -> {
+                        item.setStatus(BatchTransferResultDto.Status.SKIPPED);
+                        item.setTransferId(null);
+                    });
+            log.info("Batch transfer rolled back: user={}, size={}, rejected={}", userEmail, transfers.size(), rejected);
+            // исключение откатывает транзакцию вместе с изменёнными в памяти балансами
+            throw new BatchRolledBackException(result);
+        }
+
+        result.setApplied(transfers.size() - rejected);
+        ledger.append(postings);
+        log.info("Batch transfer: user={}, mode={}, size={}, applied={}, rejected={}",
+                userEmail, batch.getMode(), transfers.size(), result.getApplied(), rejected);
+        return result;
+    }
+
+    // обе проводки пишутся одним batch в транзакции перевода и откатываются вместе с балансами
+    private void recordTransfer(UUID transferId, UUID fromId, UUID toId, BigDecimal amount) {
+        ledger.append(postings(transferId, fromId, toId, amount, LocalDateTime.now().truncatedTo(ChronoUnit.MICROS)));
+    }
+
+    private static List<CardTransactionLedger.Posting> postings(UUID transferId, UUID fromId, UUID toId,
+                                                                BigDecimal amount, LocalDateTime createdAt) {
+        return List.of(
+                new CardTransactionLedger.Posting(transferId, fromId, toId, amount.negate(), createdAt),
+                new CardTransactionLedger.Posting(transferId, toId, fromId, amount, createdAt));
+    }
+
+    private static class BatchRolledBackException extends RuntimeException {
+        private final BatchTransferResultDto result;
+
+        BatchRolledBackException(BatchTransferResultDto result) {
+            super("Batch transfer rolled back", null, false, false);
+            this.result = result;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public CardTransactionPageDto userTransactions(String userEmail, UUID cardId, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_TRANSACTIONS_PAGE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_TRANSACTIONS_PAGE);
+        }
+        if (!cardRepository.existsByIdAndOwnerEmail(cardId, userEmail)) {
+            throw new NotFoundException("Card not found");
+        }
+        LocalDateTime beforeCreatedAt = null;
+        Long beforeId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII).split("\\|");
+                beforeCreatedAt = LocalDateTime.parse(parts[0]);
+                beforeId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new BadRequestException("Invalid cursor");
+            }
+        }
+
+        List<CardTransactionLedger.Entry> entries = ledger.findPage(cardId, beforeCreatedAt, beforeId, limit);
+        CardTransactionPageDto page = new CardTransactionPageDto();
+        page.setItems(entries.stream().map(CardService::toTransactionDto).toList());
+        if (entries.size() == limit) {
+            CardTransactionLedger.Entry last = entries.get(entries.size() - 1);
+            page.setNextCursor(Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((last.createdAt() + "|" + last.id()).getBytes(StandardCharsets.US_ASCII)));
+        }
+        return page;
+    }
+
+    private static CardTransactionDto toTransactionDto(CardTransactionLedger.Entry entry) {
+        CardTransactionDto dto = new CardTransactionDto();
+        dto.setId(entry.id());
+        dto.setTransferId(entry.transferId());
+        dto.setCounterpartyCardId(entry.counterpartyCardId());
+        dto.setAmount(entry.amount());
+        dto.setCreatedAt(entry.createdAt());
+        return dto;
+    }
+
+    private void validateTransfer(Card from, Card to, BigDecimal amount) {
         LocalDate today = LocalDate.now();
         if (from.getStatus() == CardStatus.ACTIVE && from.getExpiry().isBefore(today)) {
             from.setStatus(CardStatus.EXPIRED);
@@ -154,14 +452,7 @@ public class CardService {
 
         transferValidator.ensureTransferFromAllowed(from);
         transferValidator.ensureTransferToAllowed(to);
-
-        BigDecimal amount = transfer.getAmount();
         transferValidator.ensureSufficientFunds(from.getBalance(), amount);
-
-        from.setBalance(from.getBalance().subtract(amount));
-        to.setBalance(to.getBalance().add(amount));
-
-        log.info("Transfer: user={}, fromCard={}, toCard={}, amount={}", userEmail, from.getId(), to.getId(), amount);
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,106 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zuzukov.bank_rest.exception.custom.ConflictException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+@Component
+@Slf4j
+public class CardTransferExecutor {
+    public enum LockingMode { PESSIMISTIC, OPTIMISTIC, ATOMIC }
+
+    private final TransactionTemplate transactionTemplate;
+    private final LockingMode mode;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    private final Timer lockWait;
+    private final Counter retries;
+    private final Counter optimisticConflicts;
+    private final Counter pessimisticConflicts;
+    private final Counter exhausted;
+
+    public CardTransferExecutor(PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry,
+                                @Value("${card.transfer.locking:pessimistic}") String mode,
+                                @Value("${card.transfer.max-attempts:3}") int maxAttempts,
+                                @Value("${card.transfer.retry-backoff-ms:20}") long backoffMs) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("card.transfer.max-attempts must be positive");
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = LockingMode.valueOf(mode.trim().toUpperCase());
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+
+        this.lockWait = Timer.builder("card.transfer.lock.wait")
+                .description("Time spent acquiring row locks on both transfer cards")
+                .register(meterRegistry);
+        this.retries = Counter.builder("card.transfer.retries").register(meterRegistry);
+        this.optimisticConflicts = conflictCounter(meterRegistry, "optimistic");
+        this.pessimisticConflicts = conflictCounter(meterRegistry, "pessimistic");
+        this.exhausted = Counter.builder("card.transfer.retries.exhausted").register(meterRegistry);
+        log.info("Card transfers use {} locking, maxAttempts={}", this.mode, maxAttempts);
+    }
+
+    private static Counter conflictCounter(MeterRegistry meterRegistry, String type) {
+        return Counter.builder("card.transfer.conflicts")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+    public LockingMode mode() {
+        return mode;
+    }
+
+    public <T> T timeLockWait(Supplier<T> locking) {
+        return lockWait.record(locking);
+    }
+
+    public <T> T execute(Supplier<T> transfer) {
+        // внутри чужой транзакции повтор невозможен: откат решает вызывающий код
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transfer.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> transfer.get());
+            } catch (ConcurrencyFailureException e) {
+                // версия строки изменилась или БД прервала транзакцию из-за deadlock / lock timeout
+                (e instanceof OptimisticLockingFailureException ? optimisticConflicts : pessimisticConflicts).increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    log.warn("Transfer gave up after {} attempts: {}", attempt, e.getMessage());
+                    throw new ConflictException("Transfer conflicted with a concurrent update, please retry");
+                }
+                retries.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        if (backoffMs <= 0) {
+            return;
+        }
+        try {
+            // случайная пауза разводит повторы конкурирующих переводов по времени
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMs * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("Transfer interrupted while waiting to retry");
+        }
+    }
+}
@@ -9,15 +9,17 @@ import org.zuzukov.bank_rest.exception.custom.DecryptionException;
 import org.zuzukov.bank_rest.exception.custom.EncryptionException;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
 
 @Slf4j
 @Service
@@ -26,8 +28,31 @@ public class CryptoService {
     @Value("${card.encryption-secret}")
     private String secretHex;
 
+    @Value("${card.encryption-key-version:1}")
+    private int activeKeyVersion = 1;
+
+    // ключи, которыми только расшифровываются старые данные: version:hex,version:hex
+    @Value("${card.encryption-previous-keys:}")
+    private String previousKeys = "";
+
+    @Value("${card.fingerprint-secret}")
+    private String fingerprintSecretHex;
+
+    // версии значения cards.number_hash: 0 — SHA-256 без ключа, 1 — HMAC-SHA256
+    public static final int LEGACY_HASH_VERSION = 0;
+    public static final int FINGERPRINT_VERSION = 1;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final int VERSION_LENGTH = 1;
+    private static final int MAX_KEY_VERSION = 255;
+
     private SecretKey secretKey;
-    private final SecureRandom secureRandom = new SecureRandom();
+    private Map<Integer, SecretKey> keys = Map.of();
+    private SecretKey fingerprintKey;
+    private final ThreadLocal<Engine> engines = ThreadLocal.withInitial(Engine::new);
+    private final ThreadLocal<Mac> fingerprintMacs = ThreadLocal.withInitial(this::newFingerprintMac);
 
     @PostConstruct
     public void init() {
@@ -36,66 +61,150 @@ public class CryptoService {
                 throw new CryptoInitializationException("Encryption secret (card.encryption-secret) is not configured");
             }
 
-            byte[] keyBytes = hexToBytes(secretHex);
+            Map<Integer, SecretKey> ring = new HashMap<>();
+            for (String entry : previousKeys == null ? new String[0] : previousKeys.split(",")) {
+                if (entry.isBlank()) continue;
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    throw new CryptoInitializationException("Invalid card.encryption-previous-keys entry, expected version:hex");
+                }
+                ring.put(checkVersion(Integer.parseInt(parts[0])), aesKey(parts[1]));
+            }
+            this.secretKey = aesKey(secretHex);
+            ring.put(checkVersion(activeKeyVersion), secretKey);
+            this.keys = Map.copyOf(ring);
 
-            if (keyBytes.length != 32) {
+            if (fingerprintSecretHex == null || fingerprintSecretHex.isBlank()) {
+                throw new CryptoInitializationException("Fingerprint secret (card.fingerprint-secret) is not configured");
+            }
+            byte[] fingerprintBytes = hexToBytes(fingerprintSecretHex);
+            if (fingerprintBytes.length < 32) {
                 throw new CryptoInitializationException(
-                        "Invalid AES key length: " + keyBytes.length + " bytes. Expected 32 bytes (256 bits)."
+                        "Invalid fingerprint key length: " + fingerprintBytes.length + " bytes. Expected at least 32 bytes."
                 );
             }
-
-            this.secretKey = new SecretKeySpec(keyBytes, "AES");
-            log.info("CryptoService initialized successfully with 256-bit AES key (from HEX)");
+            this.fingerprintKey = new SecretKeySpec(fingerprintBytes, "HmacSHA256");
+            log.info("CryptoService initialized successfully with 256-bit AES keys (from HEX): active version={}, versions={}",
+                    activeKeyVersion, keys.keySet());
         } catch (Exception e) {
             log.error("Failed to initialize CryptoService: {}", e.getMessage(), e);
             throw new CryptoInitializationException("Failed to initialize CryptoService", e);
         }
     }
 
-    public String encrypt(String plaintext) {
-        if (secretKey == null) {
-            throw new CryptoInitializationException("CryptoService not initialized: secretKey is null");
+    // результат хранится в cards.number_enc (BYTEA) как есть, без Base64
+    public byte[] encrypt(String plaintext) {
+        byte[] plain = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[encryptedLength(plain.length)];
+        encrypt(plain, 0, plain.length, out, 0);
+        return out;
+    }
+
+    public String decrypt(byte[] encrypted) {
+        byte[] plain = new byte[Math.max(0, decryptedLength(encrypted.length))];
+        int length = decrypt(encrypted, 0, encrypted.length, plain, 0);
+        return new String(plain, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public int activeKeyVersion() {
+        return activeKeyVersion;
+    }
+
+    // версия читается из первого байта конверта без расшифровки
+    public static int keyVersion(byte[] encrypted) {
+        if (encrypted.length < VERSION_LENGTH) {
+            throw new DecryptionException("Decryption failed: ciphertext is too short");
         }
-        try {
-            byte[] iv = new byte[12];
-            secureRandom.nextBytes(iv);
+        return encrypted[0] & 0xFF;
+    }
 
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+    public static int encryptedLength(int plaintextLength) {
+        return VERSION_LENGTH + IV_LENGTH + plaintextLength + TAG_LENGTH;
+    }
 
-            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
-            ByteBuffer bb = ByteBuffer.allocate(iv.length + ciphertext.length);
-            bb.put(iv);
-            bb.put(ciphertext);
+    public static int decryptedLength(int encryptedLength) {
+        return encryptedLength - VERSION_LENGTH - IV_LENGTH - TAG_LENGTH;
+    }
 
-            return Base64.getEncoder().encodeToString(bb.array());
+    // формат результата: версия ключа (1 байт) | IV (12 байт) | шифртекст | тег GCM (16 байт);
+    // возвращает число записанных байт
+    public int encrypt(byte[] plaintext, int offset, int length, byte[] out, int outOffset) {
+        SecretKey key = requireKey(activeKeyVersion);
+        Engine engine = engines.get();
+        try {
+            out[outOffset] = (byte) activeKeyVersion;
+            int ivOffset = outOffset + VERSION_LENGTH;
+            engine.random.nextBytes(engine.iv);
+            System.arraycopy(engine.iv, 0, out, ivOffset, IV_LENGTH);
+            engine.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, engine.iv));
+            return VERSION_LENGTH + IV_LENGTH
+                    + engine.cipher.doFinal(plaintext, offset, length, out, ivOffset + IV_LENGTH);
         } catch (Exception e) {
             log.error("Encryption failed: {}", e.getMessage(), e);
             throw new EncryptionException("Encryption failed: " + e.getMessage(), e);
         }
     }
 
-    public String decrypt(String encoded) {
+    public int decrypt(byte[] encrypted, int offset, int length, byte[] out, int outOffset) {
+        if (length < VERSION_LENGTH + IV_LENGTH + TAG_LENGTH) {
+            throw new DecryptionException("Decryption failed: ciphertext is too short");
+        }
+        SecretKey key = requireKey(encrypted[offset] & 0xFF);
+        int ivOffset = offset + VERSION_LENGTH;
+        Cipher cipher = engines.get().cipher;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, encrypted, ivOffset, IV_LENGTH));
+            return cipher.doFinal(encrypted, ivOffset + IV_LENGTH, length - VERSION_LENGTH - IV_LENGTH, out, outOffset);
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            throw new DecryptionException("Decryption failed: " + e.getMessage(), e);
+        }
+    }
+
+    private SecretKey requireKey(int version) {
         if (secretKey == null) {
             throw new CryptoInitializationException("CryptoService not initialized: secretKey is null");
         }
-        try {
-            byte[] data = Base64.getDecoder().decode(encoded);
-            ByteBuffer bb = ByteBuffer.wrap(data);
+        SecretKey key = keys.get(version);
+        if (key == null) {
+            throw new DecryptionException("Decryption failed: unknown key version " + version);
+        }
+        return key;
+    }
 
-            byte[] iv = new byte[12];
-            bb.get(iv);
-            byte[] ciphertext = new byte[bb.remaining()];
-            bb.get(ciphertext);
+    private static SecretKey aesKey(String hex) {
+        byte[] keyBytes = hexToBytes(hex.trim());
+        if (keyBytes.length != 32) {
+            throw new CryptoInitializationException(
+                    "Invalid AES key length: " + keyBytes.length + " bytes. Expected 32 bytes (256 bits)."
+            );
+        }
+        return new SecretKeySpec(keyBytes, "AES");
+    }
 
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(128, iv));
+    private static int checkVersion(int version) {
+        if (version < 1 || version > MAX_KEY_VERSION) {
+            throw new CryptoInitializationException("Key version must be between 1 and " + MAX_KEY_VERSION + ": " + version);
+        }
+        return version;
+    }
 
-            byte[] plain = cipher.doFinal(ciphertext);
-            return new String(plain, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            log.error("Decryption failed: {}", e.getMessage(), e);
-            throw new DecryptionException("Decryption failed: " + e.getMessage(), e);
+    // Cipher.getInstance ищет провайдера на каждом вызове, а общий SecureRandom синхронизирован;
+    // поэтому у каждого потока свой Cipher и свой DRBG, а IV пишется в переиспользуемый буфер
+    private static final class Engine {
+        private final Cipher cipher;
+        private final SecureRandom random;
+        private final MessageDigest digest;
+        private final byte[] iv = new byte[IV_LENGTH];
+
+        private Engine() {
+            try {
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+                this.random = SecureRandom.getInstance("DRBG");
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (GeneralSecurityException e) {
+                throw new CryptoInitializationException("AES/GCM is not available", e);
+            }
         }
     }
 
@@ -115,17 +224,27 @@ public class CryptoService {
         }
         return data;
     }
-    public String hashCardNumber(String cardNumber) {
+
+    // номеров карт всего ~10^16, поэтому хеш без ключа перебирается; HMAC с секретом из конфигурации — нет
+    public String fingerprint(String cardNumber) {
+        if (fingerprintKey == null) {
+            throw new CryptoInitializationException("CryptoService not initialized: fingerprintKey is null");
+        }
+        return HexFormat.of().formatHex(fingerprintMacs.get().doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // нужен только для поиска по строкам, которые фоновая задача ещё не перехешировала
+    public String legacyHashCardNumber(String cardNumber) {
+        return HexFormat.of().formatHex(engines.get().digest.digest(cardNumber.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newFingerprintMac() {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(cardNumber.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(fingerprintKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new CryptoInitializationException("HmacSHA256 is not available", e);
         }
     }
 }
@@ -0,0 +1,118 @@
+package org.zuzukov.bank_rest.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.zuzukov.bank_rest.dto.card.TransferRequestDto;
+import org.zuzukov.bank_rest.exception.custom.BadRequestException;
+import org.zuzukov.bank_rest.exception.custom.ConflictException;
+import org.zuzukov.bank_rest.repository.TransferIdempotencyWriter;
+import org.zuzukov.bank_rest.repository.TransferIdempotencyWriter.Claim;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+@Component
+public class TransferIdempotency {
+    public static final String CACHE_NAME = "transferIdempotency";
+    private static final int MAX_KEY_LENGTH = 128;
+
+    private final TransferIdempotencyWriter writer;
+    private final Duration ttl;
+    // результаты только что выполненных переводов: повтор по таймауту обычно приходит на тот же узел
+    private final Cache<String, Claim> recent;
+
+    private final Counter cacheReplays;
+    private final Counter databaseReplays;
+    private final Counter claimed;
+
+    public TransferIdempotency(TransferIdempotencyWriter writer,
+                               MeterRegistry meterRegistry,
+                               @Value("${card.transfer.idempotency.ttl:PT24H}") Duration ttl,
+                               @Value("${card.transfer.idempotency.cache-size:10000}") long cacheSize) {
+        this.writer = writer;
+        this.ttl = ttl;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recent, CACHE_NAME);
+        this.cacheReplays = outcomeCounter(meterRegistry, "cache_replay");
+        this.databaseReplays = outcomeCounter(meterRegistry, "db_replay");
+        this.claimed = outcomeCounter(meterRegistry, "claimed");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("card.transfer.idempotency")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public void validateKey(String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Idempotency-Key must be 1.." + MAX_KEY_LENGTH + " characters");
+        }
+    }
+
+    // ключ привязан к содержимому запроса: повтор с другими картами или суммой не должен получить чужой ответ
+    public String requestHash(TransferRequestDto transfer) {
+        String canonical = transfer.getFromCardId() + "|" + transfer.getToCardId() + "|"
+                + transfer.getAmount().stripTrailingZeros().toPlainString();
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public Optional<UUID> cached(String userEmail, String key, String requestHash) {
+        Claim claim = recent.getIfPresent(cacheKey(userEmail, key));
+        if (claim == null) {
+            return Optional.empty();
+        }
+        cacheReplays.increment();
+        return Optional.of(replay(claim, requestHash));
+    }
+
+    // вызывается в транзакции перевода: пустой результат значит, что ключ занят этим запросом и перевод нужно выполнить
+    public Optional<UUID> claim(String userEmail, String key, String requestHash, UUID transferId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (writer.insert(userEmail, key, new Claim(requestHash, transferId), now, now.plus(ttl))) {
+            claimed.increment();
+            return Optional.empty();
+        }
+        Claim existing = writer.find(userEmail, key)
+                .orElseThrow(() -> new ConflictException("Request with this Idempotency-Key is still in progress"));
+        databaseReplays.increment();
+        recent.put(cacheKey(userEmail, key), existing);
+        return Optional.of(replay(existing, requestHash));
+    }
+
+    // только после commit: откаченный перевод не должен отвечать из кэша как выполненный
+    public void remember(String userEmail, String key, String requestHash, UUID transferId) {
+        recent.put(cacheKey(userEmail, key), new Claim(requestHash, transferId));
+    }
+
+    private static UUID replay(Claim claim, String requestHash) {
+        if (!claim.requestHash().equals(requestHash)) {
+            throw new ConflictException("Idempotency-Key was already used with a different request");
+        }
+        return claim.transferId();
+    }
+
+    private static String cacheKey(String userEmail, String key) {
+        return userEmail + '\n' + key;
+    }
+}
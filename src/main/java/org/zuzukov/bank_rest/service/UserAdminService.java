@@ -9,6 +9,8 @@ import org.zuzukov.bank_rest.entity.Role;
 import org.zuzukov.bank_rest.entity.User;
 import org.zuzukov.bank_rest.repository.UserRepository;
 import org.zuzukov.bank_rest.exception.custom.NotFoundException;
+import org.zuzukov.bank_rest.security.CustomUserDetailsService;
+import org.zuzukov.bank_rest.security.TokenEpochService;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -18,6 +20,8 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class UserAdminService {
     private final UserRepository userRepository;
+    private final CustomUserDetailsService userDetailsService;
+    private final TokenEpochService tokenEpochService;
 
 
     @Transactional(readOnly = true)
@@ -32,14 +36,17 @@ public class UserAdminService {
         Set<Role> roles = new HashSet<>(user.getRoles());
         if (enabled) roles.add(role); else roles.remove(role);
         user.setRoles(roles);
+        tokenEpochService.bump(user);
+        userDetailsService.evict(user.getEmail());
     }
 
     @Transactional
     public void delete(UUID userId) {
-        if (!userRepository.existsById(userId)) {
-            throw new NotFoundException("User not found");
-        }
+        User user = userRepository.findByUserId(userId)
+                .orElseThrow(() -> new NotFoundException("User not found"));
         userRepository.deleteById(userId);
+        tokenEpochService.invalidate(userId);
+        userDetailsService.evict(user.getEmail());
     }
 }
 
@@ -2,19 +2,20 @@ package org.zuzukov.bank_rest.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.zuzukov.bank_rest.dto.*;
-import org.zuzukov.bank_rest.entity.RevokedToken;
 import org.zuzukov.bank_rest.entity.Role;
 import org.zuzukov.bank_rest.entity.User;
 import org.zuzukov.bank_rest.exception.custom.*;
-import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
 import org.zuzukov.bank_rest.repository.UserRepository;
 import org.zuzukov.bank_rest.security.JwtService;
+import org.zuzukov.bank_rest.security.LoginThrottle;
+import org.zuzukov.bank_rest.security.PasswordHashingService;
+import org.zuzukov.bank_rest.security.TokenEpochService;
+import org.zuzukov.bank_rest.security.VerifiedToken;
 
-import java.time.LocalDateTime;
 import java.util.Set;
 import java.util.UUID;
 
@@ -23,23 +24,47 @@ import java.util.UUID;
 @Slf4j
 public class UserService {
 
-    private final RevokedTokenRepository revokedTokenRepository;
     private final UserRepository userRepository;
     private final JwtService jwtService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final TokenEpochService tokenEpochService;
+    private final LoginThrottle loginThrottle;
 
     public JwtAuthenticationDto signIn(UserCredentiallsDto credentialsDto) {
+        return signIn(credentialsDto, null);
+    }
+
+    public JwtAuthenticationDto signIn(UserCredentiallsDto credentialsDto, String clientIp) {
         log.info("User signIn attempt: email={}", credentialsDto.getEmail());
+        loginThrottle.acquire(credentialsDto.getEmail(), clientIp);
 
         User user = userRepository.findByEmail(credentialsDto.getEmail())
                 .orElseThrow(() -> new UnauthorizedException("User not found"));
 
-        if (!passwordEncoder.matches(credentialsDto.getPassword(), user.getPassword())) {
+        if (!passwordHashingService.matches(credentialsDto.getPassword(), user.getPassword())) {
             throw new UnauthorizedException("Invalid credentials");
         }
+        upgradePasswordHash(user, credentialsDto.getPassword());
 
         log.debug("User signIn success: email={}", user.getEmail());
-        return jwtService.generateJwtAuthenticationDto(user.getEmail());
+        return jwtService.generateJwtAuthenticationDto(user);
+    }
+
+    private void upgradePasswordHash(User user, String rawPassword) {
+        if (!passwordHashingService.upgradeEncoding(user.getPassword())) {
+            return;
+        }
+        try {
+            user.setPassword(passwordHashingService.encode(rawPassword));
+            userRepository.save(user);
+            log.info("Password hash upgraded: email={}", user.getEmail());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            // параллельный вход уже обновил хеш или пользователь изменён администратором
+            log.debug("Password hash upgrade skipped, user changed concurrently: email={}", user.getEmail());
+        } catch (ServiceUnavailableException e) {
+            // перехеширование не должно срывать успешный вход, попробуем при следующем
+            log.debug("Password hash upgrade postponed: email={}", user.getEmail());
+        }
     }
 
     public JwtAuthenticationDto refreshToken(RefreshTokenDto refreshTokenDto) {
@@ -49,14 +74,13 @@ public class UserService {
             throw new BadRequestException("Refresh token is required");
         }
 
-        if (!jwtService.validateJwtToken(refreshToken)) {
-            throw new InvalidRefreshTokenException("Invalid or expired refresh token");
-        }
-
-        String email = jwtService.getEmailFromToken(refreshToken);
-        log.info("Refresh token rotation for email={}", email);
+        VerifiedToken verified = jwtService.verify(refreshToken)
+                .orElseThrow(() -> new InvalidRefreshTokenException("Invalid or expired refresh token"));
+        log.info("Refresh token rotation for email={}", verified.subject());
 
-        return jwtService.refreshBaseToken(email, refreshToken);
+        User user = userRepository.findByEmail(verified.subject())
+                .orElseThrow(() -> new InvalidRefreshTokenException("User no longer exists"));
+        return jwtService.refreshBaseToken(user, verified);
     }
 
     public UUID addUser(UserCreateDto userDto) {
@@ -74,7 +98,7 @@ public class UserService {
         user.setEmail(userDto.getEmail());
         user.setFirstName(userDto.getFirstName());
         user.setLastName(userDto.getLastName());
-        user.setPassword(passwordEncoder.encode(userDto.getPassword()));
+        user.setPassword(passwordHashingService.encode(userDto.getPassword()));
         user.setRoles(Set.of(Role.ROLE_USER));
 
         userRepository.save(user);
@@ -116,21 +140,27 @@ public class UserService {
             throw new BadRequestException("Token is required");
         }
 
-        if (!revokedTokenRepository.existsByToken(token)) {
-            RevokedToken revokedToken = new RevokedToken();
-            String hashedToken = DigestUtils.sha256Hex(token);
-            revokedToken.setToken(hashedToken);
-            revokedToken.setRevokedAt(LocalDateTime.now());
-            revokedTokenRepository.save(revokedToken);
-            log.info("Token revoked (sha256)={}", hashedToken);
-        }
+        // истёкший или уже отозванный токен отзывать не нужно
+        jwtService.verify(token).ifPresent(verified -> {
+            jwtService.revoke(verified);
+            log.info("Token revoked: jti={}", verified.jti());
+        });
+    }
+
+    @Transactional
+    public void revokeAllTokens(String email) {
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new NotFoundException("User not found"));
+        tokenEpochService.bump(user);
     }
 
     public boolean validateToken(String token, String email) {
         if (token == null || token.isBlank()) return false;
         if (email == null || email.isBlank()) return false;
 
-        return jwtService.validateJwtToken(token) && jwtService.getEmailFromToken(token).equals(email);
+        return jwtService.verify(token)
+                .map(verified -> verified.subject().equals(email))
+                .orElse(false);
     }
 
     private UserDto mapToDto(User user) {
@@ -0,0 +1,91 @@
+package org.zuzukov.bank_rest.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.zuzukov.bank_rest.entity.Card;
+import org.zuzukov.bank_rest.exception.custom.DecryptionException;
+import org.zuzukov.bank_rest.repository.CardRepository;
+import org.zuzukov.bank_rest.service.CryptoService;
+
+import java.util.List;
+import java.util.UUID;
+
+@Service
+@Slf4j
+public class CardFingerprintRehashScheduler {
+    // UUID в PostgreSQL сравниваются побайтно без знака, нулевой UUID меньше любого другого
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final CardRepository cardRepository;
+    private final CryptoService cryptoService;
+    private final int batchSize;
+    private final Counter rehashed;
+    private final Counter failed;
+
+    private volatile boolean legacyHashesPending = true;
+    private UUID cursor = FIRST_ID;
+
+    public CardFingerprintRehashScheduler(CardRepository cardRepository,
+                                          CryptoService cryptoService,
+                                          MeterRegistry meterRegistry,
+                                          @Value("${card.fingerprint.rehash-batch-size:500}") int batchSize) {
+        this.cardRepository = cardRepository;
+        this.cryptoService = cryptoService;
+        this.batchSize = batchSize;
+        this.rehashed = Counter.builder("card.fingerprint.rehashed").register(meterRegistry);
+        this.failed = Counter.builder("card.fingerprint.rehash.failed").register(meterRegistry);
+    }
+
+    // пока остаются строки со старым хешем, проверка дубликатов ищет номер по обоим вариантам
+    public boolean legacyHashesPending() {
+        return legacyHashesPending;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        legacyHashesPending = cardRepository.existsByNumberHashVersion(CryptoService.LEGACY_HASH_VERSION);
+        log.info("Card fingerprint migration: legacyHashesPending={}", legacyHashesPending);
+    }
+
+    @Scheduled(fixedDelayString = "${card.fingerprint.rehash-interval-ms:1000}",
+            initialDelayString = "${card.fingerprint.rehash-interval-ms:1000}")
+    @Transactional
+    public synchronized void rehashBatch() {
+        if (!legacyHashesPending) {
+            return;
+        }
+        List<Card> batch = cardRepository.findBatchByNumberHashVersion(
+                CryptoService.LEGACY_HASH_VERSION, cursor, PageRequest.ofSize(batchSize));
+        if (batch.isEmpty()) {
+            // строки, на которых расшифровка упала, остаются со старой версией и будут повторены со следующего прохода
+            cursor = FIRST_ID;
+            legacyHashesPending = cardRepository.existsByNumberHashVersion(CryptoService.LEGACY_HASH_VERSION);
+            if (!legacyHashesPending) {
+                log.info("Card fingerprint migration finished");
+            }
+            return;
+        }
+        int updated = 0;
+        for (Card card : batch) {
+            try {
+                String fingerprint = cryptoService.fingerprint(cryptoService.decrypt(card.getNumberEncrypted()));
+                updated += cardRepository.updateNumberHash(card.getId(), fingerprint,
+                        CryptoService.LEGACY_HASH_VERSION, CryptoService.FINGERPRINT_VERSION);
+            } catch (DecryptionException e) {
+                failed.increment();
+                log.error("Cannot rehash card fingerprint: id={}, error={}", card.getId(), e.getMessage());
+            }
+        }
+        cursor = batch.get(batch.size() - 1).getId();
+        rehashed.increment(updated);
+        log.info("Card fingerprint rehash batch: rows={}, updated={}", batch.size(), updated);
+    }
+}
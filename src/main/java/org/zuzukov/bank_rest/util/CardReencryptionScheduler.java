@@ -0,0 +1,191 @@
+package org.zuzukov.bank_rest.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zuzukov.bank_rest.dto.card.CardReencryptionProgressDto;
+import org.zuzukov.bank_rest.exception.custom.DecryptionException;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter.Ciphertext;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter.Replacement;
+import org.zuzukov.bank_rest.service.CryptoService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@Slf4j
+public class CardReencryptionScheduler {
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final CardCiphertextWriter ciphertextWriter;
+    private final CryptoService cryptoService;
+    private final int batchSize;
+    private final int parallelism;
+    private final long nanosPerRow;
+    private final ExecutorService workers;
+
+    private final Counter reencryptedRows;
+    private final Counter failedRows;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // общий для всех воркеров график: следующий момент, с которого разрешено брать строки
+    private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private UUID cursor = FIRST_ID;
+
+    public CardReencryptionScheduler(CardCiphertextWriter ciphertextWriter,
+                                     CryptoService cryptoService,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${card.reencryption.batch-size:200}") int batchSize,
+                                     @Value("${card.reencryption.parallelism:2}") int parallelism,
+                                     @Value("${card.reencryption.max-rows-per-second:1000}") int maxRowsPerSecond) {
+        this.ciphertextWriter = ciphertextWriter;
+        this.cryptoService = cryptoService;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.nanosPerRow = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxRowsPerSecond);
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "card-reencryption");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reencryptedRows = Counter.builder("card.reencryption.rows").tag("result", "reencrypted").register(meterRegistry);
+        this.failedRows = Counter.builder("card.reencryption.rows").tag("result", "failed").register(meterRegistry);
+        Gauge.builder("card.reencryption.remaining", this, job -> Math.max(0, job.total.get() - job.processed.get()))
+                .description("Rows of the current pass not yet re-encrypted with the active key")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${card.reencryption.check-interval-ms:60000}",
+            initialDelayString = "${card.reencryption.initial-delay-ms:10000}")
+    public void reencryptStale() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = cryptoService.activeKeyVersion();
+            long stale = ciphertextWriter.countNotEncryptedWith(target);
+            if (stale == 0) {
+                running.set(false);
+                return;
+            }
+            start(stale);
+            log.info("Card re-encryption started: targetKeyVersion={}, rows={}, parallelism={}", target, stale, parallelism);
+
+            // поток планировщика общий для всех @Scheduled задач: проход только запускается, running снимает последний воркер
+            CompletableFuture<?>[] passes = new CompletableFuture<?>[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                passes[i] = CompletableFuture.runAsync(() -> drain(target), workers);
+            }
+            CompletableFuture.allOf(passes).whenComplete((ignored, error) -> finish(target, error));
+        } catch (DataAccessException e) {
+            log.error("Card re-encryption pass failed to start: {}", e.getMessage(), e);
+            running.set(false);
+        }
+    }
+
+    private void finish(int target, Throwable error) {
+        finishedAt = LocalDateTime.now();
+        if (error == null) {
+            log.info("Card re-encryption finished: targetKeyVersion={}, processed={}, failed={}",
+                    target, processed.get(), failed.get());
+        } else {
+            // незавершённый проход продолжится со следующего запуска: выборка идёт по версии ключа
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            log.error("Card re-encryption pass failed: {}", cause.getMessage(), cause);
+        }
+        running.set(false);
+    }
+
+    public CardReencryptionProgressDto progress() {
+        CardReencryptionProgressDto dto = new CardReencryptionProgressDto();
+        dto.setRunning(startedAt != null && finishedAt == null);
+        dto.setTargetKeyVersion(cryptoService.activeKeyVersion());
+        dto.setTotal(total.get());
+        dto.setProcessed(processed.get());
+        dto.setFailed(failed.get());
+        dto.setStartedAt(startedAt);
+        dto.setFinishedAt(finishedAt);
+        return dto;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private void start(long stale) {
+        cursor = FIRST_ID;
+        total.set(stale);
+        processed.set(0);
+        failed.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        nextSlotNanos.set(System.nanoTime());
+    }
+
+    private void drain(int target) {
+        List<Ciphertext> chunk;
+        while (!Thread.currentThread().isInterrupted() && !(chunk = nextChunk(target)).isEmpty()) {
+            try {
+                throttle(chunk.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            List<Replacement> replacements = new ArrayList<>(chunk.size());
+            for (Ciphertext row : chunk) {
+                try {
+                    String plain = cryptoService.decrypt(row.numberEncrypted());
+                    replacements.add(new Replacement(row.id(), row.numberEncrypted(), cryptoService.encrypt(plain), target));
+                } catch (DecryptionException e) {
+                    failed.incrementAndGet();
+                    failedRows.increment();
+                    log.error("Cannot re-encrypt card number: id={}, error={}", row.id(), e.getMessage());
+                }
+            }
+            // строки, изменённые между чтением и записью, пропускаются и попадут в следующий проход
+            int updated = ciphertextWriter.replace(replacements);
+            reencryptedRows.increment(updated);
+            processed.addAndGet(chunk.size());
+        }
+    }
+
+    private synchronized List<Ciphertext> nextChunk(int target) {
+        List<Ciphertext> chunk = ciphertextWriter.findNotEncryptedWith(target, cursor, batchSize);
+        if (!chunk.isEmpty()) {
+            cursor = chunk.get(chunk.size() - 1).id();
+        }
+        return chunk;
+    }
+
+    // ограничение скорости общее для всех воркеров, чтобы проход не забирал ресурсы БД у онлайн-запросов
+    private void throttle(int rows) throws InterruptedException {
+        long now = System.nanoTime();
+        long slot = nextSlotNanos.getAndUpdate(next -> Math.max(next, now) + rows * nanosPerRow);
+        long wait = slot - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.zuzukov.bank_rest.util;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@Slf4j
+public class CardTransactionPartitionScheduler {
+    private static final String PARTITION_PREFIX = "card_transactions_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtomicLong tableBytes = new AtomicLong();
+
+    @Value("${card.transactions.partitions-ahead:2}")
+    private int partitionsAhead;
+
+    public CardTransactionPartitionScheduler(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        meterRegistry.gauge("card.transactions.table.bytes", tableBytes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        createPartitions();
+    }
+
+    // журнал не чистится: задача только заранее создаёт месячные партиции, чтобы строки не копились в default
+    @Scheduled(cron = "${card.transactions.partition-cron:0 15 3 * * *}")
+    public void createPartitions() {
+        if (!isPartitioned()) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            createPartition(current.plusMonths(i));
+        }
+
+        Long bytes = jdbcTemplate.queryForObject("""
+                SELECT COALESCE(sum(pg_total_relation_size(inhrelid)), 0)
+                FROM pg_inherits WHERE inhparent = 'card_transactions'::regclass
+                """, Long.class);
+        tableBytes.set(bytes == null ? 0 : bytes);
+        log.info("Card transaction partitions ensured: monthsAhead={}, tableBytes={}", partitionsAhead, tableBytes.get());
+    }
+
+    private boolean isPartitioned() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('card_transactions')",
+                    Integer.class);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            log.debug("card_transactions is not partitioned on this database: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void createPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF card_transactions FOR VALUES FROM ('"
+                    + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        } catch (DataAccessException e) {
+            // в default уже лежат строки этого месяца: партицию нужно создать вручную, перенеся их
+            log.error("Cannot create partition {}: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.zuzukov.bank_rest.util;
+
+public final class Luhn {
+    private Luhn() {}
+
+    // контрольная цифра для номера без неё: удваивается каждая вторая цифра справа, начиная с последней
+    public static int checkDigit(CharSequence payload) {
+        int sum = 0;
+        boolean doubled = true;
+        for (int i = payload.length() - 1; i >= 0; i--) {
+            int digit = payload.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) digit -= 9;
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static boolean isValid(String number) {
+        if (number == null || number.length() < 2 || !number.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        return checkDigit(number.subSequence(0, number.length() - 1)) == number.charAt(number.length() - 1) - '0';
+    }
+}
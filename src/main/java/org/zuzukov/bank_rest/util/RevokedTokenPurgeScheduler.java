@@ -0,0 +1,112 @@
+package org.zuzukov.bank_rest.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zuzukov.bank_rest.security.RevocationIndex;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+@Slf4j
+public class RevokedTokenPurgeScheduler {
+    private static final String PARTITION_PREFIX = "revoked_tokens_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RevocationIndex revocationIndex;
+    private final Counter purgedRows;
+    private final AtomicLong tableBytes = new AtomicLong();
+
+    @Value("${jwt.revocation.partitions-ahead:3}")
+    private int partitionsAhead;
+
+    public RevokedTokenPurgeScheduler(JdbcTemplate jdbcTemplate, RevocationIndex revocationIndex, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.revocationIndex = revocationIndex;
+        this.purgedRows = Counter.builder("jwt.revocation.purged.rows").register(meterRegistry);
+        meterRegistry.gauge("jwt.revocation.table.bytes", tableBytes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        purgeExpired();
+    }
+
+    @Scheduled(cron = "${jwt.revocation.purge-cron:0 5 * * * *}")
+    public void purgeExpired() {
+        if (!isPartitioned()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            createPartition(today.plusDays(i));
+        }
+
+        long purged = 0;
+        for (String partition : partitions()) {
+            LocalDate day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            // партиция целиком истекла: все токены в ней уже не пройдут проверку подписи по exp
+            if (day.plusDays(1).isAfter(today)) continue;
+            try {
+                Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + partition, Long.class);
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                purged += rows == null ? 0 : rows;
+                log.info("Dropped expired revoked_tokens partition {}: rows={}", partition, rows);
+            } catch (DataAccessException e) {
+                // партицию мог уже удалить другой узел
+                log.debug("Skipping partition {}: {}", partition, e.getMessage());
+            }
+        }
+        purged += jdbcTemplate.update("DELETE FROM revoked_tokens_default WHERE expires_at < now()");
+
+        Long bytes = jdbcTemplate.queryForObject("""
+                SELECT COALESCE(sum(pg_total_relation_size(inhrelid)), 0)
+                FROM pg_inherits WHERE inhparent = 'revoked_tokens'::regclass
+                """, Long.class);
+        tableBytes.set(bytes == null ? 0 : bytes);
+        purgedRows.increment(purged);
+        log.info("Revoked tokens purge finished: purgedRows={}, tableBytes={}", purged, tableBytes.get());
+
+        if (purged > 0) {
+            // Bloom-фильтр не умеет удалять, поэтому после очистки пересобираем его из оставшихся строк
+            revocationIndex.load();
+        }
+    }
+
+    private boolean isPartitioned() {
+        try {
+            Integer count = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_partitioned_table WHERE partrelid = to_regclass('revoked_tokens')",
+                    Integer.class);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            log.debug("revoked_tokens is not partitioned on this database: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void createPartition(LocalDate day) {
+        String name = PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF revoked_tokens FOR VALUES FROM ('"
+                + day + "') TO ('" + day.plusDays(1) + "')");
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'revoked_tokens'::regclass AND c.relname LIKE 'revoked\\_tokens\\_p%'
+                ORDER BY c.relname
+                """, String.class);
+    }
+}
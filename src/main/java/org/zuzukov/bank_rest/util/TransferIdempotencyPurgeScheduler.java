@@ -0,0 +1,41 @@
+package org.zuzukov.bank_rest.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zuzukov.bank_rest.repository.TransferIdempotencyWriter;
+
+import java.time.LocalDateTime;
+
+@Service
+@Slf4j
+public class TransferIdempotencyPurgeScheduler {
+    private final TransferIdempotencyWriter writer;
+    private final Counter purgedRows;
+
+    @Value("${card.transfer.idempotency.purge-batch-size:1000}")
+    private int batchSize;
+
+    public TransferIdempotencyPurgeScheduler(TransferIdempotencyWriter writer, MeterRegistry meterRegistry) {
+        this.writer = writer;
+        this.purgedRows = Counter.builder("card.transfer.idempotency.purged.rows").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${card.transfer.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        long purged = 0;
+        int deleted;
+        do {
+            deleted = writer.purgeExpired(now, batchSize);
+            purged += deleted;
+        } while (deleted == batchSize);
+        purgedRows.increment(purged);
+        if (purged > 0) {
+            log.info("Expired transfer idempotency keys purged: rows={}", purged);
+        }
+    }
+}
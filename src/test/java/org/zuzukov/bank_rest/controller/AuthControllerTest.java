@@ -9,7 +9,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.zuzukov.bank_rest.dto.*;
 import org.zuzukov.bank_rest.exception.custom.ConflictException;
+import org.zuzukov.bank_rest.exception.custom.TooManyRequestsException;
 import org.zuzukov.bank_rest.exception.custom.UnauthorizedException;
+import org.zuzukov.bank_rest.security.TokenIntrospectionService;
 import org.zuzukov.bank_rest.service.UserService;
 
 import java.security.Principal;
@@ -25,11 +27,13 @@ class AuthControllerTest {
 	private MockMvc mockMvc;
 	private ObjectMapper objectMapper;
 	private UserService userService;
+	private TokenIntrospectionService tokenIntrospectionService;
 
 	@BeforeEach
 	void setup() {
 		userService = Mockito.mock(UserService.class);
-		AuthController controller = new AuthController(userService);
+		tokenIntrospectionService = Mockito.mock(TokenIntrospectionService.class);
+		AuthController controller = new AuthController(userService, tokenIntrospectionService);
 		mockMvc = MockMvcBuilders.standaloneSetup(controller)
 				.setControllerAdvice(new org.zuzukov.bank_rest.exception.GlobalExceptionHandler())
 				.build();
@@ -77,7 +81,7 @@ class AuthControllerTest {
 		JwtAuthenticationDto tokens = new JwtAuthenticationDto();
 		tokens.setToken("access-token");
 		tokens.setRefreshToken("refresh-token");
-		when(userService.signIn(any())).thenReturn(tokens);
+		when(userService.signIn(any(), any())).thenReturn(tokens);
 
 		UserCredentiallsDto dto = new UserCredentiallsDto();
 		dto.setEmail("john@example.com");
@@ -93,7 +97,7 @@ class AuthControllerTest {
 
 	@Test
 	void login_unauthorized() throws Exception {
-		when(userService.signIn(any())).thenThrow(new UnauthorizedException("Invalid credentials"));
+		when(userService.signIn(any(), any())).thenThrow(new UnauthorizedException("Invalid credentials"));
 
 		UserCredentiallsDto dto = new UserCredentiallsDto();
 		dto.setEmail("john@example.com");
@@ -105,6 +109,23 @@ class AuthControllerTest {
 				.andExpect(jsonPath("$.message").value("Invalid credentials"));
 	}
 
+	@Test
+	void login_throttled() throws Exception {
+		when(userService.signIn(any(), eq("127.0.0.1")))
+				.thenThrow(new TooManyRequestsException("Too many login attempts, retry later", 12));
+
+		UserCredentiallsDto dto = new UserCredentiallsDto();
+		dto.setEmail("john@example.com");
+		dto.setPassword("StrongPass123");
+
+		mockMvc.perform(post("/auth/login")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(dto)))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "12"))
+				.andExpect(jsonPath("$.code").value("TOO_MANY_REQUESTS"));
+	}
+
 	@Test
 	void refresh_success() throws Exception {
 		JwtAuthenticationDto tokens = new JwtAuthenticationDto();
@@ -145,4 +166,33 @@ class AuthControllerTest {
 				.andExpect(status().isOk())
 				.andExpect(jsonPath("$.email").value("john@example.com"));
 	}
+
+	@Test
+	void introspect_returnsActiveToken() throws Exception {
+		TokenIntrospectionDto result = new TokenIntrospectionDto();
+		result.setActive(true);
+		result.setSub("john@example.com");
+		result.setExp(1_900_000_000L);
+		when(tokenIntrospectionService.introspect("tok")).thenReturn(result);
+
+		mockMvc.perform(post("/auth/introspect")
+						.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+						.param("token", "tok"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.active").value(true))
+				.andExpect(jsonPath("$.sub").value("john@example.com"))
+				.andExpect(jsonPath("$.exp").value(1_900_000_000L));
+	}
+
+	@Test
+	void introspect_inactiveTokenHasOnlyActiveFlag() throws Exception {
+		when(tokenIntrospectionService.introspect("bad")).thenReturn(TokenIntrospectionDto.inactive());
+
+		mockMvc.perform(post("/auth/introspect")
+						.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+						.param("token", "bad"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.active").value(false))
+				.andExpect(jsonPath("$.sub").doesNotExist());
+	}
 }
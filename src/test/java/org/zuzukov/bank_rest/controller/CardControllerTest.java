@@ -11,9 +11,12 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.zuzukov.bank_rest.controller.CardController;
+import org.zuzukov.bank_rest.dto.card.BatchTransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.BatchTransferResultDto;
 import org.zuzukov.bank_rest.dto.card.CardCreateDto;
 import org.zuzukov.bank_rest.dto.card.CardDto;
 import org.zuzukov.bank_rest.dto.card.TransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.TransferResultDto;
 import org.zuzukov.bank_rest.entity.CardStatus;
 import org.zuzukov.bank_rest.service.CardService;
 
@@ -73,13 +76,69 @@ class CardControllerTest {
 		dto.setToCardId(UUID.randomUUID());
 		dto.setAmount(new BigDecimal("250.50"));
 
+		when(cardService.transferBetweenOwn(eq("user@example.com"), any(TransferRequestDto.class), isNull()))
+				.thenReturn(new TransferResultDto(UUID.randomUUID(), false));
+
 		mockMvc.perform(post("/cards/transfer")
 					.principal((Principal) () -> "user@example.com")
 					.contentType(MediaType.APPLICATION_JSON)
 					.content(objectMapper.writeValueAsString(dto)))
-				.andExpect(status().isOk());
+				.andExpect(status().isOk())
+				.andExpect(header().string("Idempotent-Replayed", "false"));
+
+		verify(cardService).transferBetweenOwn(eq("user@example.com"), any(TransferRequestDto.class), isNull());
+	}
+
+	@Test
+	void transfer_replayWithIdempotencyKey() throws Exception {
+		TransferRequestDto dto = new TransferRequestDto();
+		dto.setFromCardId(UUID.randomUUID());
+		dto.setToCardId(UUID.randomUUID());
+		dto.setAmount(new BigDecimal("10"));
+		UUID transferId = UUID.randomUUID();
+		when(cardService.transferBetweenOwn(eq("user@example.com"), any(TransferRequestDto.class), eq("retry-1")))
+				.thenReturn(new TransferResultDto(transferId, true));
 
-		verify(cardService).transferBetweenOwn(eq("user@example.com"), any(TransferRequestDto.class));
+		mockMvc.perform(post("/cards/transfer")
+					.principal((Principal) () -> "user@example.com")
+					.header("Idempotency-Key", "retry-1")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(objectMapper.writeValueAsString(dto)))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Idempotent-Replayed", "true"))
+				.andExpect(jsonPath("$.transferId").value(transferId.toString()));
+	}
+
+	@Test
+	void transferBatch_success() throws Exception {
+		TransferRequestDto item = new TransferRequestDto();
+		item.setFromCardId(UUID.randomUUID());
+		item.setToCardId(UUID.randomUUID());
+		item.setAmount(new BigDecimal("5"));
+		BatchTransferRequestDto dto = new BatchTransferRequestDto();
+		dto.setMode(BatchTransferRequestDto.Mode.BEST_EFFORT);
+		dto.setTransfers(List.of(item));
+
+		BatchTransferResultDto resp = new BatchTransferResultDto();
+		resp.setMode(BatchTransferRequestDto.Mode.BEST_EFFORT);
+		resp.setApplied(1);
+		when(cardService.transferBatch(eq("user@example.com"), any(BatchTransferRequestDto.class))).thenReturn(resp);
+
+		mockMvc.perform(post("/cards/transfer/batch")
+					.principal((Principal) () -> "user@example.com")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(objectMapper.writeValueAsString(dto)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.applied").value(1));
+	}
+
+	@Test
+	void transferBatch_emptyRejected() throws Exception {
+		mockMvc.perform(post("/cards/transfer/batch")
+					.principal((Principal) () -> "user@example.com")
+					.contentType(MediaType.APPLICATION_JSON)
+					.content("{\"mode\":\"ALL_OR_NOTHING\",\"transfers\":[]}"))
+				.andExpect(status().isBadRequest());
 	}
 
 	@Test
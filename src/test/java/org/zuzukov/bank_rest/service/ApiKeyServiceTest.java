@@ -0,0 +1,128 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.dto.ApiKeyDto;
+import org.zuzukov.bank_rest.entity.ApiKey;
+import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.exception.custom.NotFoundException;
+import org.zuzukov.bank_rest.repository.ApiKeyRepository;
+import org.zuzukov.bank_rest.repository.CacheInvalidationRepository;
+import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.security.ApiKeyPrincipal;
+import org.zuzukov.bank_rest.security.ApiKeyService;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ApiKeyServiceTest {
+
+	private ApiKeyRepository apiKeyRepository;
+	private UserRepository userRepository;
+	private ApiKeyService service;
+	private User owner;
+
+	@BeforeEach
+	void setup() {
+		apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+		userRepository = Mockito.mock(UserRepository.class);
+		CacheInvalidationBus bus = new CacheInvalidationBus(
+				Mockito.mock(CacheInvalidationRepository.class), Duration.ofMinutes(1), Duration.ofHours(1));
+		service = new ApiKeyService(apiKeyRepository, userRepository, bus, new SimpleMeterRegistry(),
+				"test-hmac-secret", 100, Duration.ofMinutes(5));
+
+		owner = new User();
+		owner.setUserId(UUID.randomUUID());
+		owner.setEmail("svc@bank.local");
+		when(userRepository.findByUserId(owner.getUserId())).thenReturn(Optional.of(owner));
+		when(apiKeyRepository.save(any(ApiKey.class))).thenAnswer(inv -> {
+			ApiKey key = inv.getArgument(0);
+			key.setId(UUID.randomUUID());
+			return key;
+		});
+	}
+
+	private ApiKey createAndCapture(ApiKeyDto[] created) {
+		created[0] = service.create(owner.getUserId(), "billing", null);
+		ArgumentCaptor<ApiKey> captor = ArgumentCaptor.forClass(ApiKey.class);
+		verify(apiKeyRepository).save(captor.capture());
+		return captor.getValue();
+	}
+
+	@Test
+	void create_returnsRawKeyOnce_andStoresOnlyHash() {
+		ApiKeyDto[] created = new ApiKeyDto[1];
+		ApiKey stored = createAndCapture(created);
+
+		String rawKey = created[0].getKey();
+		assertTrue(rawKey.startsWith("bk_"));
+		assertEquals(64, stored.getKeyHash().length());
+		assertFalse(stored.getKeyHash().contains(rawKey));
+		assertTrue(rawKey.startsWith(stored.getPrefix()));
+	}
+
+	@Test
+	void authenticate_hitsRepositoryOncePerKey() {
+		ApiKeyDto[] created = new ApiKeyDto[1];
+		ApiKey stored = createAndCapture(created);
+		ApiKeyPrincipal principal = new ApiKeyPrincipal(stored.getId(), owner.getUserId(), owner.getEmail(), null);
+		when(apiKeyRepository.findActivePrincipal(stored.getKeyHash())).thenReturn(Optional.of(principal));
+
+		assertEquals(Optional.of(principal), service.authenticate(created[0].getKey()));
+		assertEquals(Optional.of(principal), service.authenticate(created[0].getKey()));
+		verify(apiKeyRepository, times(1)).findActivePrincipal(stored.getKeyHash());
+	}
+
+	@Test
+	void authenticate_unknownKeyIsCachedAsMiss() {
+		when(apiKeyRepository.findActivePrincipal(anyString())).thenReturn(Optional.empty());
+
+		assertTrue(service.authenticate("bk_unknown").isEmpty());
+		assertTrue(service.authenticate("bk_unknown").isEmpty());
+		assertTrue(service.authenticate("not-a-key").isEmpty());
+		verify(apiKeyRepository, times(1)).findActivePrincipal(anyString());
+	}
+
+	@Test
+	void authenticate_expiredKeyIsRejected() {
+		ApiKeyPrincipal expired = new ApiKeyPrincipal(UUID.randomUUID(), owner.getUserId(), owner.getEmail(),
+				LocalDateTime.now().minusMinutes(1));
+		when(apiKeyRepository.findActivePrincipal(anyString())).thenReturn(Optional.of(expired));
+
+		assertTrue(service.authenticate("bk_expired").isEmpty());
+	}
+
+	@Test
+	void revoke_evictsCachedPrincipal() {
+		ApiKeyDto[] created = new ApiKeyDto[1];
+		ApiKey stored = createAndCapture(created);
+		ApiKeyPrincipal principal = new ApiKeyPrincipal(stored.getId(), owner.getUserId(), owner.getEmail(), null);
+		when(apiKeyRepository.findActivePrincipal(stored.getKeyHash()))
+				.thenReturn(Optional.of(principal))
+				.thenReturn(Optional.empty());
+		when(apiKeyRepository.findById(stored.getId())).thenReturn(Optional.of(stored));
+
+		assertTrue(service.authenticate(created[0].getKey()).isPresent());
+		service.revoke(stored.getId());
+
+		assertNotNull(stored.getRevokedAt());
+		assertTrue(service.authenticate(created[0].getKey()).isEmpty());
+	}
+
+	@Test
+	void revoke_unknownKey_throwsNotFound() {
+		UUID id = UUID.randomUUID();
+		when(apiKeyRepository.findById(id)).thenReturn(Optional.empty());
+		assertThrows(NotFoundException.class, () -> service.revoke(id));
+	}
+}
@@ -0,0 +1,76 @@
+package org.zuzukov.bank_rest.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.entity.CacheInvalidation;
+import org.zuzukov.bank_rest.repository.CacheInvalidationRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class CacheInvalidationBusTest {
+
+	private final CacheInvalidationRepository repository = Mockito.mock(CacheInvalidationRepository.class);
+	private final CacheInvalidationBus bus = new CacheInvalidationBus(repository, Duration.ofMinutes(1), Duration.ofHours(1));
+
+	@Test
+	void repeatedPoll_doesNotReEvict() {
+		List<String> evicted = new ArrayList<>();
+		bus.subscribe("users", evicted::add);
+		CacheInvalidation event = event(1L, "users", "a@b.c");
+		when(repository.findAllByCreatedAtAfter(any())).thenReturn(List.of(event));
+
+		bus.poll();
+		bus.poll();
+		bus.poll();
+
+		assertEquals(List.of("a@b.c"), evicted);
+	}
+
+	@Test
+	void lateCommittedEventInsideOverlap_isDispatched() {
+		List<String> evicted = new ArrayList<>();
+		bus.subscribe("users", evicted::add);
+		CacheInvalidation first = event(2L, "users", "a@b.c");
+		// меньший id, но закоммичено позже: должно примениться на следующем опросе
+		CacheInvalidation late = event(1L, "users", "late@b.c");
+		when(repository.findAllByCreatedAtAfter(any())).thenReturn(List.of(first), List.of(late, first));
+
+		bus.poll();
+		bus.poll();
+
+		assertEquals(List.of("a@b.c", "late@b.c"), evicted);
+	}
+
+	@Test
+	void ownPublishedEvent_isNotDispatchedAgainByPoll() {
+		List<String> evicted = new ArrayList<>();
+		bus.subscribe("users", evicted::add);
+		when(repository.save(any())).thenAnswer(inv -> {
+			CacheInvalidation saved = inv.getArgument(0);
+			saved.setId(7L);
+			return saved;
+		});
+
+		bus.publish("users", "a@b.c");
+		when(repository.findAllByCreatedAtAfter(any())).thenReturn(List.of(event(7L, "users", "a@b.c")));
+		bus.poll();
+
+		assertEquals(List.of("a@b.c"), evicted);
+	}
+
+	private static CacheInvalidation event(long id, String cacheName, String key) {
+		CacheInvalidation event = new CacheInvalidation();
+		event.setId(id);
+		event.setCacheName(cacheName);
+		event.setCacheKey(key);
+		event.setCreatedAt(LocalDateTime.now());
+		return event;
+	}
+}
@@ -0,0 +1,51 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.repository.CardNumberSequence;
+import org.zuzukov.bank_rest.util.Luhn;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CardNumberAllocatorTest {
+
+	@Test
+	void next_issuesUniqueLuhnValidNumbersWithBin() {
+		CardNumberSequence sequence = Mockito.mock(CardNumberSequence.class);
+		when(sequence.nextBlock()).thenReturn(1L, 2L, 3L);
+		CardNumberAllocator allocator = new CardNumberAllocator(sequence, new SimpleMeterRegistry(), "400000", 100);
+
+		Set<String> issued = new HashSet<>();
+		for (int i = 0; i < 250; i++) {
+			String pan = allocator.next();
+			assertEquals(16, pan.length());
+			assertTrue(pan.startsWith("400000"));
+			assertTrue(Luhn.isValid(pan), pan);
+			assertTrue(issued.add(pan), "duplicate " + pan);
+		}
+		verify(sequence, times(3)).nextBlock();
+		assertTrue(allocator.isIssuingRange(issued.iterator().next()));
+		assertFalse(allocator.isIssuingRange("4111111111111111"));
+	}
+
+	@Test
+	void next_rangeExhausted_throws() {
+		CardNumberSequence sequence = Mockito.mock(CardNumberSequence.class);
+		when(sequence.nextBlock()).thenReturn(10_000_000L);
+		CardNumberAllocator allocator = new CardNumberAllocator(sequence, new SimpleMeterRegistry(), "40000000", 1000);
+		assertThrows(IllegalStateException.class, allocator::next);
+	}
+
+	@Test
+	void luhn_knownNumbers() {
+		assertTrue(Luhn.isValid("4111111111111111"));
+		assertTrue(Luhn.isValid("79927398713"));
+		assertFalse(Luhn.isValid("4111111111111112"));
+		assertEquals(3, Luhn.checkDigit("7992739871"));
+	}
+}
@@ -0,0 +1,126 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.dto.card.CardReencryptionProgressDto;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter.Ciphertext;
+import org.zuzukov.bank_rest.repository.CardCiphertextWriter.Replacement;
+import org.zuzukov.bank_rest.util.CardReencryptionScheduler;
+
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CardReencryptionSchedulerTest {
+
+	private CardReencryptionScheduler scheduler;
+
+	@AfterEach
+	void tearDown() {
+		if (scheduler != null) scheduler.shutdown();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void reencryptStale_rewritesRowsWithActiveKeyAndReportsProgress() throws Exception {
+		String keyV1 = HexFormat.of().formatHex(new byte[32]);
+		String keyV2 = keyV1.replace('0', '7');
+		CryptoService oldCrypto = CryptoServiceTest.newService(keyV1, 1, "");
+		CryptoService crypto = CryptoServiceTest.newService(keyV2, 2, "1:" + keyV1);
+
+		UUID first = new UUID(0, 1);
+		UUID second = new UUID(0, 2);
+		byte[] firstEnc = oldCrypto.encrypt("4111111111111111");
+		CardCiphertextWriter writer = Mockito.mock(CardCiphertextWriter.class);
+		when(writer.countNotEncryptedWith(2)).thenReturn(2L);
+		when(writer.findNotEncryptedWith(eq(2), any(UUID.class), anyInt())).thenAnswer(inv -> {
+			UUID after = inv.getArgument(1);
+			if (after.equals(new UUID(0, 0))) {
+				return List.of(new Ciphertext(first, firstEnc), new Ciphertext(second, new byte[]{1, 2, 3}));
+			}
+			return List.of();
+		});
+		when(writer.replace(any())).thenAnswer(inv -> ((List<Replacement>) inv.getArgument(0)).size());
+
+		scheduler = new CardReencryptionScheduler(writer, crypto, new SimpleMeterRegistry(), 10, 2, 100_000);
+		scheduler.reencryptStale();
+		awaitFinished(scheduler);
+
+		ArgumentCaptor<List<Replacement>> captor = ArgumentCaptor.forClass(List.class);
+		verify(writer).replace(captor.capture());
+		List<Replacement> replacements = captor.getValue();
+		assertEquals(1, replacements.size());
+		Replacement replacement = replacements.get(0);
+		assertEquals(first, replacement.id());
+		assertEquals(firstEnc, replacement.oldNumberEncrypted());
+		assertEquals(2, replacement.keyVersion());
+		assertEquals(2, CryptoService.keyVersion(replacement.newNumberEncrypted()));
+		assertEquals("4111111111111111", crypto.decrypt(replacement.newNumberEncrypted()));
+
+		CardReencryptionProgressDto progress = scheduler.progress();
+		assertFalse(progress.isRunning());
+		assertEquals(2, progress.getTotal());
+		assertEquals(2, progress.getProcessed());
+		assertEquals(1, progress.getFailed());
+		assertNotNull(progress.getFinishedAt());
+	}
+
+	@Test
+	void reencryptStale_nothingToDo_doesNotStartPass() throws Exception {
+		CryptoService crypto = CryptoServiceTest.newService(HexFormat.of().formatHex(new byte[32]), 1, "");
+		CardCiphertextWriter writer = Mockito.mock(CardCiphertextWriter.class);
+		when(writer.countNotEncryptedWith(1)).thenReturn(0L);
+
+		scheduler = new CardReencryptionScheduler(writer, crypto, new SimpleMeterRegistry(), 10, 2, 100_000);
+		scheduler.reencryptStale();
+
+		verify(writer, never()).findNotEncryptedWith(anyInt(), any(), anyInt());
+		assertNull(scheduler.progress().getStartedAt());
+	}
+
+	@Test
+	void reencryptStale_returnsBeforeWorkersFinish() throws Exception {
+		CryptoService crypto = CryptoServiceTest.newService(HexFormat.of().formatHex(new byte[32]), 1, "");
+		CardCiphertextWriter writer = Mockito.mock(CardCiphertextWriter.class);
+		CountDownLatch release = new CountDownLatch(1);
+		when(writer.countNotEncryptedWith(1)).thenReturn(1L);
+		when(writer.findNotEncryptedWith(eq(1), any(UUID.class), anyInt())).thenAnswer(inv -> {
+			release.await();
+			return List.of();
+		});
+
+		scheduler = new CardReencryptionScheduler(writer, crypto, new SimpleMeterRegistry(), 10, 2, 100_000);
+		// поток планировщика не должен ждать воркеров
+		assertTimeoutPreemptively(Duration.ofSeconds(2), scheduler::reencryptStale);
+		assertTrue(scheduler.progress().isRunning());
+
+		// следующий запуск во время прохода ничего не делает
+		scheduler.reencryptStale();
+		verify(writer, times(1)).countNotEncryptedWith(1);
+
+		release.countDown();
+		awaitFinished(scheduler);
+		assertNotNull(scheduler.progress().getFinishedAt());
+	}
+
+	private static void awaitFinished(CardReencryptionScheduler scheduler) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (scheduler.progress().isRunning()) {
+			assertTrue(System.nanoTime() < deadline, "re-encryption pass did not finish");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -1,27 +1,39 @@
 package org.zuzukov.bank_rest.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.zuzukov.bank_rest.dto.card.BatchTransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.BatchTransferResultDto;
 import org.zuzukov.bank_rest.dto.card.CardCreateDto;
 import org.zuzukov.bank_rest.dto.card.CardDto;
+import org.zuzukov.bank_rest.dto.card.CardIssueDto;
+import org.zuzukov.bank_rest.dto.card.CardTransactionPageDto;
 import org.zuzukov.bank_rest.dto.card.TransferRequestDto;
+import org.zuzukov.bank_rest.dto.card.TransferResultDto;
 import org.zuzukov.bank_rest.entity.Card;
 import org.zuzukov.bank_rest.entity.CardStatus;
 import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.exception.custom.BadRequestException;
 import org.zuzukov.bank_rest.exception.custom.NotFoundException;
+import org.zuzukov.bank_rest.util.CardFingerprintRehashScheduler;
 import org.zuzukov.bank_rest.util.mapper.CardMapper;
 import org.zuzukov.bank_rest.repository.CardRepository;
+import org.zuzukov.bank_rest.repository.CardTransactionLedger;
 import org.zuzukov.bank_rest.repository.UserRepository;
 import org.zuzukov.bank_rest.util.validator.CardTransferValidator;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -30,6 +42,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -40,6 +53,10 @@ class CardServiceTest {
     private CryptoService cryptoService;
     private CardMapper cardMapper;
     private CardTransferValidator validator;
+    private CardFingerprintRehashScheduler fingerprintRehash;
+    private CardNumberAllocator cardNumberAllocator;
+    private CardTransactionLedger ledger;
+    private TransferIdempotency idempotency;
     private CardService cardService;
 
     @BeforeEach
@@ -49,7 +66,12 @@ class CardServiceTest {
         cryptoService = Mockito.mock(CryptoService.class);
         cardMapper = Mockito.mock(CardMapper.class);
         validator = Mockito.mock(CardTransferValidator.class);
-        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator);
+        fingerprintRehash = Mockito.mock(CardFingerprintRehashScheduler.class);
+        cardNumberAllocator = Mockito.mock(CardNumberAllocator.class);
+        ledger = Mockito.mock(CardTransactionLedger.class);
+        idempotency = Mockito.mock(TransferIdempotency.class);
+        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator,
+                fingerprintRehash, cardNumberAllocator, transferExecutor("optimistic"), ledger, idempotency);
 
         MockitoAnnotations.openMocks(this);
         cardService.getClass()
@@ -76,7 +98,7 @@ class CardServiceTest {
         User owner = new User();
         owner.setEmail("a@b.c");
         when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(owner));
-        when(cryptoService.encrypt("4111111111111111")).thenReturn("enc");
+        when(cryptoService.encrypt("4111111111111111")).thenReturn(new byte[]{1, 2, 3});
         when(cardRepository.save(any(Card.class))).thenAnswer(inv -> {
             Card c = inv.getArgument(0);
             c.setId(UUID.randomUUID());
@@ -89,11 +111,79 @@ class CardServiceTest {
         ArgumentCaptor<Card> captor = ArgumentCaptor.forClass(Card.class);
         verify(cardRepository).save(captor.capture());
         Card saved = captor.getValue();
-        assertEquals("enc", saved.getNumberEncrypted());
+        assertArrayEquals(new byte[]{1, 2, 3}, saved.getNumberEncrypted());
         assertEquals("1111", saved.getLast4());
         assertEquals(CardStatus.ACTIVE, saved.getStatus());
     }
 
+    @Test
+    void adminCreate_withoutNumber_issuesNumberWithoutDuplicateCheck() {
+        CardCreateDto dto = new CardCreateDto();
+        dto.setOwnerEmail("a@b.c");
+        dto.setExpiryMonth(12);
+        dto.setExpiryYear(2030);
+
+        when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(new User()));
+        when(cardNumberAllocator.next()).thenReturn("4000000000001236");
+        when(cryptoService.fingerprint("4000000000001236")).thenReturn("hmac");
+        when(cardRepository.save(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        cardService.adminCreate(dto);
+
+        ArgumentCaptor<Card> captor = ArgumentCaptor.forClass(Card.class);
+        verify(cardRepository).save(captor.capture());
+        assertEquals("1236", captor.getValue().getLast4());
+        assertEquals("hmac", captor.getValue().getNumberHash());
+        verify(cardRepository, never()).existsByNumberHash(any());
+    }
+
+    @Test
+    void adminIssue_savesAllCardsInOneCall() {
+        CardIssueDto dto = new CardIssueDto();
+        dto.setOwnerEmail("a@b.c");
+        dto.setCount(3);
+        dto.setExpiryMonth(12);
+        dto.setExpiryYear(2030);
+
+        when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(new User()));
+        when(cardNumberAllocator.next()).thenReturn("4000000000001236", "4000000000001244", "4000000000001251");
+        when(cardRepository.saveAll(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(cardMapper.toDto(any())).thenReturn(new CardDto());
+
+        assertEquals(3, cardService.adminIssue(dto).size());
+        verify(cardRepository, never()).existsByNumberHash(any());
+        verify(cardRepository, never()).save(any());
+    }
+
+    @Test
+    void adminCreate_rejectsNumberFromIssuingBin() {
+        CardCreateDto dto = new CardCreateDto();
+        dto.setOwnerEmail("a@b.c");
+        dto.setCardNumber("4000000000001236");
+
+        when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(new User()));
+        when(cardNumberAllocator.isIssuingRange("4000000000001236")).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> cardService.adminCreate(dto));
+        verify(cardRepository, never()).save(any());
+    }
+
+    @Test
+    void adminCreate_rejectsNumberStillStoredWithLegacyHash() {
+        CardCreateDto dto = new CardCreateDto();
+        dto.setOwnerEmail("a@b.c");
+        dto.setCardNumber("4111111111111111");
+
+        when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(new User()));
+        when(cryptoService.fingerprint("4111111111111111")).thenReturn("hmac");
+        when(cryptoService.legacyHashCardNumber("4111111111111111")).thenReturn("sha");
+        when(fingerprintRehash.legacyHashesPending()).thenReturn(true);
+        when(cardRepository.existsByNumberHash("sha")).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> cardService.adminCreate(dto));
+        verify(cardRepository, never()).save(any());
+    }
+
     @Test
     void adminBlock_notFound() {
         UUID id = UUID.randomUUID();
@@ -188,6 +278,295 @@ class CardServiceTest {
 
         assertEquals(new BigDecimal("75"), from.getBalance());
         assertEquals(new BigDecimal("25"), to.getBalance());
+
+        ArgumentCaptor<List<CardTransactionLedger.Posting>> postings = ArgumentCaptor.forClass(List.class);
+        verify(ledger).append(postings.capture());
+        assertEquals(2, postings.getValue().size());
+        assertEquals(new BigDecimal("-25"), postings.getValue().get(0).amount());
+        assertEquals(fromId, postings.getValue().get(0).cardId());
+        assertEquals(new BigDecimal("25"), postings.getValue().get(1).amount());
+        assertEquals(toId, postings.getValue().get(1).cardId());
+        assertEquals(postings.getValue().get(0).transferId(), postings.getValue().get(1).transferId());
+    }
+
+
+    @Test
+    void transferBetweenOwn_pessimisticLocksCardsInIdOrder() {
+        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator,
+                fingerprintRehash, cardNumberAllocator, transferExecutor("pessimistic"), ledger, idempotency);
+        UUID lowId = new UUID(0, 1);
+        UUID highId = new UUID(0, 2);
+
+        Card low = new Card();
+        low.setId(lowId);
+        low.setStatus(CardStatus.ACTIVE);
+        low.setExpiry(LocalDate.now().plusDays(1));
+        low.setBalance(new BigDecimal("0"));
+
+        Card high = new Card();
+        high.setId(highId);
+        high.setStatus(CardStatus.ACTIVE);
+        high.setExpiry(LocalDate.now().plusDays(1));
+        high.setBalance(new BigDecimal("100"));
+
+        when(cardRepository.findForUpdateByIdAndOwnerEmail(lowId, "u@x")).thenReturn(Optional.of(low));
+        when(cardRepository.findForUpdateByIdAndOwnerEmail(highId, "u@x")).thenReturn(Optional.of(high));
+
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(highId);
+        req.setToCardId(lowId);
+        req.setAmount(new BigDecimal("40"));
+
+        cardService.transferBetweenOwn("u@x", req);
+
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).findForUpdateByIdAndOwnerEmail(lowId, "u@x");
+        inOrder.verify(cardRepository).findForUpdateByIdAndOwnerEmail(highId, "u@x");
+        verify(cardRepository, never()).findByIdAndOwnerEmail(any(), any());
+        assertEquals(new BigDecimal("60"), high.getBalance());
+        assertEquals(new BigDecimal("40"), low.getBalance());
+    }
+
+    @Test
+    void transferBetweenOwn_atomicUsesTwoConditionalUpdates() {
+        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator,
+                fingerprintRehash, cardNumberAllocator, transferExecutor("atomic"), ledger, idempotency);
+        UUID lowId = new UUID(0, 1);
+        UUID highId = new UUID(0, 2);
+        BigDecimal amount = new BigDecimal("10");
+        when(cardRepository.debitIfAllowed(eq(lowId), eq("u@x"), eq(amount), any())).thenReturn(1);
+        when(cardRepository.creditIfAllowed(eq(highId), eq("u@x"), eq(amount), any())).thenReturn(1);
+
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(lowId);
+        req.setToCardId(highId);
+        req.setAmount(amount);
+
+        cardService.transferBetweenOwn("u@x", req);
+
+        InOrder inOrder = Mockito.inOrder(cardRepository);
+        inOrder.verify(cardRepository).debitIfAllowed(eq(lowId), eq("u@x"), eq(amount), any());
+        inOrder.verify(cardRepository).creditIfAllowed(eq(highId), eq("u@x"), eq(amount), any());
+        verify(cardRepository, never()).findByIdAndOwnerEmail(any(), any());
+    }
+
+    @Test
+    void transferBetweenOwn_atomicRejectedDebitMapsToValidatorError() {
+        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator,
+                fingerprintRehash, cardNumberAllocator, transferExecutor("atomic"), ledger, idempotency);
+        UUID fromId = new UUID(0, 2);
+        UUID toId = new UUID(0, 1);
+        BigDecimal amount = new BigDecimal("500");
+
+        Card from = new Card();
+        from.setId(fromId);
+        from.setStatus(CardStatus.ACTIVE);
+        from.setExpiry(LocalDate.now().plusDays(1));
+        from.setBalance(new BigDecimal("100"));
+
+        Card to = new Card();
+        to.setId(toId);
+        to.setStatus(CardStatus.ACTIVE);
+        to.setExpiry(LocalDate.now().plusDays(1));
+        to.setBalance(BigDecimal.ZERO);
+
+        when(cardRepository.creditIfAllowed(eq(toId), eq("u@x"), eq(amount), any())).thenReturn(1);
+        when(cardRepository.debitIfAllowed(eq(fromId), eq("u@x"), eq(amount), any())).thenReturn(0);
+        when(cardRepository.findByIdAndOwnerEmail(fromId, "u@x")).thenReturn(Optional.of(from));
+        when(cardRepository.findByIdAndOwnerEmail(toId, "u@x")).thenReturn(Optional.of(to));
+        Mockito.doThrow(new BadRequestException("Insufficient funds"))
+                .when(validator).ensureSufficientFunds(new BigDecimal("100"), amount);
+
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(fromId);
+        req.setToCardId(toId);
+        req.setAmount(amount);
+
+        BadRequestException ex = assertThrows(BadRequestException.class, () -> cardService.transferBetweenOwn("u@x", req));
+        assertEquals("Insufficient funds", ex.getMessage());
+        verify(ledger, never()).append(any());
+    }
+
+    @Test
+    void transferBetweenOwn_atomicMissingCardIsNotFound() {
+        cardService = new CardService(cardRepository, userRepository, cryptoService, cardMapper, validator,
+                fingerprintRehash, cardNumberAllocator, transferExecutor("atomic"), ledger, idempotency);
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(new UUID(0, 1));
+        req.setToCardId(new UUID(0, 2));
+        req.setAmount(BigDecimal.ONE);
+        when(cardRepository.findByIdAndOwnerEmail(any(), any())).thenReturn(Optional.empty());
+
+        NotFoundException ex = assertThrows(NotFoundException.class, () -> cardService.transferBetweenOwn("u@x", req));
+        assertEquals("From card not found", ex.getMessage());
+        verify(cardRepository, never()).creditIfAllowed(any(), any(), any(), any());
+    }
+
+    @Test
+    void transferBetweenOwn_idempotentReplayDoesNotTouchCards() {
+        UUID previous = UUID.randomUUID();
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(UUID.randomUUID());
+        req.setToCardId(UUID.randomUUID());
+        req.setAmount(BigDecimal.TEN);
+        when(idempotency.requestHash(req)).thenReturn("h");
+        when(idempotency.cached("u@x", "k1", "h")).thenReturn(Optional.empty());
+        when(idempotency.claim(eq("u@x"), eq("k1"), eq("h"), any())).thenReturn(Optional.of(previous));
+
+        TransferResultDto result = cardService.transferBetweenOwn("u@x", req, "k1");
+
+        assertTrue(result.isReplayed());
+        assertEquals(previous, result.getTransferId());
+        verify(cardRepository, never()).findByIdAndOwnerEmail(any(), any());
+        verify(ledger, never()).append(any());
+        verify(idempotency, never()).remember(any(), any(), any(), any());
+    }
+
+    @Test
+    void transferBetweenOwn_idempotencyKeyRememberedAfterTransfer() {
+        UUID fromId = UUID.randomUUID();
+        UUID toId = UUID.randomUUID();
+        Card from = new Card();
+        from.setId(fromId);
+        from.setStatus(CardStatus.ACTIVE);
+        from.setExpiry(LocalDate.now().plusDays(1));
+        from.setBalance(new BigDecimal("100"));
+        Card to = new Card();
+        to.setId(toId);
+        to.setStatus(CardStatus.ACTIVE);
+        to.setExpiry(LocalDate.now().plusDays(1));
+        to.setBalance(BigDecimal.ZERO);
+        when(cardRepository.findByIdAndOwnerEmail(fromId, "u@x")).thenReturn(Optional.of(from));
+        when(cardRepository.findByIdAndOwnerEmail(toId, "u@x")).thenReturn(Optional.of(to));
+        when(idempotency.requestHash(any())).thenReturn("h");
+        when(idempotency.cached("u@x", "k2", "h")).thenReturn(Optional.empty());
+        when(idempotency.claim(eq("u@x"), eq("k2"), eq("h"), any())).thenReturn(Optional.empty());
+
+        TransferRequestDto req = new TransferRequestDto();
+        req.setFromCardId(fromId);
+        req.setToCardId(toId);
+        req.setAmount(BigDecimal.TEN);
+
+        TransferResultDto result = cardService.transferBetweenOwn("u@x", req, "k2");
+
+        assertFalse(result.isReplayed());
+        assertEquals(new BigDecimal("90"), from.getBalance());
+        verify(idempotency).claim("u@x", "k2", "h", result.getTransferId());
+        verify(idempotency).remember("u@x", "k2", "h", result.getTransferId());
+    }
+
+    @Test
+    void transferBatch_bestEffortAppliesValidItemsAgainstRunningBalance() {
+        Card a = activeCard(new UUID(0, 1), "100");
+        Card b = activeCard(new UUID(0, 2), "0");
+        when(cardRepository.findAllForUpdateByIdInAndOwnerEmail(any(), eq("u@x"))).thenReturn(List.of(a, b));
+        Mockito.doAnswer(inv -> {
+            if (((BigDecimal) inv.getArgument(0)).compareTo(inv.getArgument(1)) < 0) {
+                throw new BadRequestException("Insufficient funds");
+            }
+            return null;
+        }).when(validator).ensureSufficientFunds(any(), any());
+
+        BatchTransferRequestDto batch = batch(BatchTransferRequestDto.Mode.BEST_EFFORT,
+                transfer(a.getId(), b.getId(), "60"),
+                transfer(a.getId(), b.getId(), "60"),
+                transfer(a.getId(), UUID.randomUUID(), "1"),
+                transfer(b.getId(), a.getId(), "10"));
+
+        BatchTransferResultDto result = cardService.transferBatch("u@x", batch);
+
+        assertEquals(2, result.getApplied());
+        assertEquals(2, result.getRejected());
+        assertEquals(BatchTransferResultDto.Status.APPLIED, result.getItems().get(0).getStatus());
+        assertEquals("Insufficient funds", result.getItems().get(1).getMessage());
+        assertEquals("To card not found", result.getItems().get(2).getMessage());
+        assertEquals(BatchTransferResultDto.Status.APPLIED, result.getItems().get(3).getStatus());
+        assertEquals(new BigDecimal("50"), a.getBalance());
+        assertEquals(new BigDecimal("50"), b.getBalance());
+
+        ArgumentCaptor<List<CardTransactionLedger.Posting>> postings = ArgumentCaptor.forClass(List.class);
+        verify(ledger).append(postings.capture());
+        assertEquals(4, postings.getValue().size());
+        verify(cardRepository, Mockito.times(1)).findAllForUpdateByIdInAndOwnerEmail(any(), any());
+    }
+
+    @Test
+    void transferBatch_allOrNothingSkipsEverythingOnRejection() {
+        Card a = activeCard(new UUID(0, 1), "100");
+        Card b = activeCard(new UUID(0, 2), "0");
+        when(cardRepository.findAllForUpdateByIdInAndOwnerEmail(any(), eq("u@x"))).thenReturn(List.of(a, b));
+        Mockito.doThrow(new BadRequestException("Cannot transfer to the same card"))
+                .when(validator).ensureNotSameCard(a.getId(), a.getId());
+
+        BatchTransferRequestDto batch = batch(BatchTransferRequestDto.Mode.ALL_OR_NOTHING,
+                transfer(a.getId(), b.getId(), "10"),
+                transfer(a.getId(), a.getId(), "10"));
+
+        BatchTransferResultDto result = cardService.transferBatch("u@x", batch);
+
+        assertEquals(0, result.getApplied());
+        assertEquals(1, result.getRejected());
+        assertEquals(BatchTransferResultDto.Status.SKIPPED, result.getItems().get(0).getStatus());
+        assertNull(result.getItems().get(0).getTransferId());
+        assertEquals(BatchTransferResultDto.Status.REJECTED, result.getItems().get(1).getStatus());
+        verify(ledger, never()).append(any());
+    }
+
+    private static Card activeCard(UUID id, String balance) {
+        Card card = new Card();
+        card.setId(id);
+        card.setStatus(CardStatus.ACTIVE);
+        card.setExpiry(LocalDate.now().plusDays(1));
+        card.setBalance(new BigDecimal(balance));
+        return card;
+    }
+
+    private static TransferRequestDto transfer(UUID from, UUID to, String amount) {
+        TransferRequestDto dto = new TransferRequestDto();
+        dto.setFromCardId(from);
+        dto.setToCardId(to);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
+
+    private static BatchTransferRequestDto batch(BatchTransferRequestDto.Mode mode, TransferRequestDto... transfers) {
+        BatchTransferRequestDto dto = new BatchTransferRequestDto();
+        dto.setMode(mode);
+        dto.setTransfers(List.of(transfers));
+        return dto;
+    }
+
+    @Test
+    void userTransactions_returnsCursorForNextPage() {
+        UUID cardId = UUID.randomUUID();
+        LocalDateTime at = LocalDateTime.of(2026, 10, 1, 12, 0, 0, 123_000);
+        when(cardRepository.existsByIdAndOwnerEmail(cardId, "u@x")).thenReturn(true);
+        when(ledger.findPage(cardId, null, null, 2)).thenReturn(List.of(
+                new CardTransactionLedger.Entry(9, UUID.randomUUID(), cardId, UUID.randomUUID(), new BigDecimal("-5"), at),
+                new CardTransactionLedger.Entry(7, UUID.randomUUID(), cardId, UUID.randomUUID(), new BigDecimal("3"), at)));
+
+        CardTransactionPageDto first = cardService.userTransactions("u@x", cardId, null, 2);
+        assertEquals(2, first.getItems().size());
+        assertNotNull(first.getNextCursor());
+
+        when(ledger.findPage(cardId, at, 7L, 2)).thenReturn(List.of());
+        CardTransactionPageDto second = cardService.userTransactions("u@x", cardId, first.getNextCursor(), 2);
+        assertTrue(second.getItems().isEmpty());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void userTransactions_foreignCardOrBadCursorRejected() {
+        UUID cardId = UUID.randomUUID();
+        assertThrows(NotFoundException.class, () -> cardService.userTransactions("u@x", cardId, null, 10));
+        when(cardRepository.existsByIdAndOwnerEmail(cardId, "u@x")).thenReturn(true);
+        assertThrows(BadRequestException.class, () -> cardService.userTransactions("u@x", cardId, "not-a-cursor", 10));
+        assertThrows(BadRequestException.class, () -> cardService.userTransactions("u@x", cardId, null, 0));
+    }
+
+    private static CardTransferExecutor transferExecutor(String mode) {
+        return new CardTransferExecutor(Mockito.mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+                mode, 3, 0);
     }
 
 
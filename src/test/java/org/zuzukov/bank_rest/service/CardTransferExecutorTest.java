@@ -0,0 +1,66 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.zuzukov.bank_rest.entity.Card;
+import org.zuzukov.bank_rest.exception.custom.ConflictException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardTransferExecutorTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final CardTransferExecutor executor = new CardTransferExecutor(
+			Mockito.mock(PlatformTransactionManager.class), registry, "optimistic", 3, 0);
+
+	@Test
+	void execute_retriesOptimisticConflictInNewTransaction() {
+		AtomicInteger calls = new AtomicInteger();
+		executor.execute(() -> {
+			if (calls.incrementAndGet() < 3) {
+				throw new ObjectOptimisticLockingFailureException(Card.class, "id");
+			}
+			return null;
+		});
+
+		assertEquals(3, calls.get());
+		assertEquals(2.0, registry.get("card.transfer.retries").counter().count());
+		assertEquals(2.0, registry.get("card.transfer.conflicts").tag("type", "optimistic").counter().count());
+		assertEquals(CardTransferExecutor.LockingMode.OPTIMISTIC, executor.mode());
+	}
+
+	@Test
+	void execute_givesUpAfterMaxAttempts() {
+		AtomicInteger calls = new AtomicInteger();
+		assertThrows(ConflictException.class, () -> executor.execute(() -> {
+			calls.incrementAndGet();
+			throw new CannotAcquireLockException("deadlock detected");
+		}));
+
+		assertEquals(3, calls.get());
+		assertEquals(3.0, registry.get("card.transfer.conflicts").tag("type", "pessimistic").counter().count());
+		assertEquals(1.0, registry.get("card.transfer.retries.exhausted").counter().count());
+	}
+
+	@Test
+	void execute_doesNotRetryBusinessErrors() {
+		AtomicInteger calls = new AtomicInteger();
+		assertThrows(ConflictException.class, () -> executor.execute(() -> {
+			calls.incrementAndGet();
+			throw new ConflictException("Card is expired");
+		}));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	void constructor_rejectsUnknownMode() {
+		assertThrows(IllegalArgumentException.class, () -> new CardTransferExecutor(
+				Mockito.mock(PlatformTransactionManager.class), new SimpleMeterRegistry(), "serializable", 3, 0));
+	}
+}
@@ -2,9 +2,17 @@ package org.zuzukov.bank_rest.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.zuzukov.bank_rest.exception.custom.DecryptionException;
 
 import java.lang.reflect.Field;
-import java.util.Base64;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -12,24 +20,116 @@ class CryptoServiceTest {
 
 	private CryptoService cryptoService;
 
+	private static final String KEY_V1 = HexFormat.of().formatHex(key(0));
+	private static final String KEY_V2 = HexFormat.of().formatHex(key(100));
+
 	@BeforeEach
 	void setup() throws Exception {
-		cryptoService = new CryptoService();
-		byte[] key = new byte[32];
-		for (int i = 0; i < key.length; i++) key[i] = (byte) i;
-		String base64 = Base64.getEncoder().encodeToString(key);
-		Field f = CryptoService.class.getDeclaredField("secretBase64");
+		cryptoService = newService(KEY_V1, 1, "");
+	}
+
+	static CryptoService newService(String activeHex, int version, String previousKeys) throws Exception {
+		CryptoService service = new CryptoService();
+		set(service, "secretHex", activeHex);
+		set(service, "activeKeyVersion", version);
+		set(service, "previousKeys", previousKeys);
+		set(service, "fingerprintSecretHex", HexFormat.of().formatHex(new byte[32]).replace('0', 'a'));
+		service.init();
+		return service;
+	}
+
+	private static void set(CryptoService service, String name, Object value) throws Exception {
+		Field f = CryptoService.class.getDeclaredField(name);
 		f.setAccessible(true);
-		f.set(cryptoService, base64);
-		cryptoService.init();
+		f.set(service, value);
+	}
+
+	private static byte[] key(int start) {
+		byte[] key = new byte[32];
+		for (int i = 0; i < key.length; i++) key[i] = (byte) (start + i);
+		return key;
 	}
 
 	@Test
 	void encrypt_decrypt_roundtrip() {
 		String plain = "hello-123";
-		String enc = cryptoService.encrypt(plain);
-		assertNotEquals(plain, enc);
+		byte[] enc = cryptoService.encrypt(plain);
+		assertEquals(CryptoService.encryptedLength(plain.length()), enc.length);
+		assertFalse(new String(enc, StandardCharsets.ISO_8859_1).contains(plain));
 		String dec = cryptoService.decrypt(enc);
 		assertEquals(plain, dec);
 	}
+
+	@Test
+	void encrypt_usesFreshIvEachTime() {
+		assertFalse(Arrays.equals(cryptoService.encrypt("4111111111111111"), cryptoService.encrypt("4111111111111111")));
+	}
+
+	@Test
+	void bufferApi_roundtripWithOffsets() {
+		byte[] plain = "4111111111111111".getBytes(StandardCharsets.UTF_8);
+		byte[] encrypted = new byte[CryptoService.encryptedLength(plain.length) + 4];
+		int written = cryptoService.encrypt(plain, 0, plain.length, encrypted, 4);
+		assertEquals(CryptoService.encryptedLength(plain.length), written);
+
+		byte[] decrypted = new byte[plain.length + 2];
+		int read = cryptoService.decrypt(encrypted, 4, written, decrypted, 2);
+		assertEquals(plain.length, read);
+		assertArrayEquals(plain, Arrays.copyOfRange(decrypted, 2, 2 + read));
+	}
+
+	@Test
+	void decrypt_tamperedCiphertext_throws() {
+		byte[] plain = "4111111111111111".getBytes(StandardCharsets.UTF_8);
+		byte[] encrypted = new byte[CryptoService.encryptedLength(plain.length)];
+		cryptoService.encrypt(plain, 0, plain.length, encrypted, 0);
+		encrypted[encrypted.length - 1] ^= 1;
+		assertThrows(DecryptionException.class,
+				() -> cryptoService.decrypt(encrypted, 0, encrypted.length, new byte[plain.length], 0));
+		assertThrows(DecryptionException.class, () -> cryptoService.decrypt(new byte[]{1, 2, 3}));
+	}
+
+	@Test
+	void rotatedKey_decryptsOldVersionsAndEncryptsWithNew() throws Exception {
+		byte[] oldCiphertext = cryptoService.encrypt("4111111111111111");
+		CryptoService rotated = newService(KEY_V2, 2, "1:" + KEY_V1);
+
+		assertEquals(1, CryptoService.keyVersion(oldCiphertext));
+		assertEquals("4111111111111111", rotated.decrypt(oldCiphertext));
+		byte[] newCiphertext = rotated.encrypt("4111111111111111");
+		assertEquals(2, CryptoService.keyVersion(newCiphertext));
+		assertThrows(DecryptionException.class, () -> cryptoService.decrypt(newCiphertext));
+	}
+
+	@Test
+	void fingerprint_isKeyedAndDiffersFromLegacyHash() {
+		String fingerprint = cryptoService.fingerprint("4111111111111111");
+		assertEquals(64, fingerprint.length());
+		assertEquals(fingerprint, cryptoService.fingerprint("4111111111111111"));
+		assertNotEquals(cryptoService.legacyHashCardNumber("4111111111111111"), fingerprint);
+		// SHA-256("abc") из FIPS 180-2
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+				cryptoService.legacyHashCardNumber("abc"));
+	}
+
+	@Test
+	void concurrentUse_isSafe() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				int seed = t;
+				results.add(pool.submit(() -> {
+					for (int i = 0; i < 500; i++) {
+						String plain = "card-" + seed + "-" + i;
+						if (!plain.equals(cryptoService.decrypt(cryptoService.encrypt(plain)))) return false;
+					}
+					return true;
+				}));
+			}
+			for (Future<Boolean> result : results) assertTrue(result.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
 }
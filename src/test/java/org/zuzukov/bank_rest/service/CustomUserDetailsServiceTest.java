@@ -0,0 +1,78 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.zuzukov.bank_rest.entity.Role;
+import org.zuzukov.bank_rest.entity.User;
+import org.zuzukov.bank_rest.repository.CacheInvalidationRepository;
+import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.security.CustomUserDetailsService;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CustomUserDetailsServiceTest {
+
+	private UserRepository userRepository;
+	private CacheInvalidationRepository invalidationRepository;
+	private SimpleMeterRegistry meterRegistry;
+	private CustomUserDetailsService service;
+
+	@BeforeEach
+	void setup() {
+		userRepository = Mockito.mock(UserRepository.class);
+		invalidationRepository = Mockito.mock(CacheInvalidationRepository.class);
+		meterRegistry = new SimpleMeterRegistry();
+		CacheInvalidationBus bus = new CacheInvalidationBus(invalidationRepository, Duration.ofMinutes(1), Duration.ofHours(1));
+		service = new CustomUserDetailsService(userRepository, bus, meterRegistry, 100, Duration.ofMinutes(5));
+	}
+
+	private static User user(String email) {
+		User u = new User();
+		u.setUserId(UUID.randomUUID());
+		u.setEmail(email);
+		u.setPassword("encoded");
+		u.setRoles(Set.of(Role.ROLE_USER));
+		return u;
+	}
+
+	@Test
+	void loadUserByUsername_cachesResult() {
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user("a@b.c")));
+
+		service.loadUserByUsername("a@b.c");
+		service.loadUserByUsername("a@b.c");
+
+		verify(userRepository, times(1)).findByEmail("a@b.c");
+		assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+	}
+
+	@Test
+	void evict_reloadsAndPublishesInvalidation() {
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user("a@b.c")));
+
+		service.loadUserByUsername("a@b.c");
+		service.evict("a@b.c");
+		service.loadUserByUsername("a@b.c");
+
+		verify(userRepository, times(2)).findByEmail("a@b.c");
+		verify(invalidationRepository).save(any());
+	}
+
+	@Test
+	void unknownUser_notCached() {
+		when(userRepository.findByEmail("x@y.z")).thenReturn(Optional.empty());
+		assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("x@y.z"));
+		assertThrows(UsernameNotFoundException.class, () -> service.loadUserByUsername("x@y.z"));
+		verify(userRepository, times(2)).findByEmail("x@y.z");
+	}
+}
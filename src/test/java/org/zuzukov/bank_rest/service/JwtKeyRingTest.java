@@ -0,0 +1,91 @@
+package org.zuzukov.bank_rest.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+import org.zuzukov.bank_rest.security.JwtKeyRing;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtKeyRingTest {
+
+	private static String hmacSecret() {
+		byte[] key = new byte[32];
+		for (int i = 0; i < 32; i++) key[i] = (byte) i;
+		return Base64.getEncoder().encodeToString(key);
+	}
+
+	@Test
+	void es256_tokensVerifyWithPublishedJwks() throws Exception {
+		KeyPair pair = Jwts.SIG.ES256.keyPair().build();
+		JwtKeyRing keyRing = new JwtKeyRing("ES256", "ec-1", "",
+				Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded()),
+				Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()), "", false);
+
+		String token = keyRing.sign(Jwts.builder().subject("a@b.c")).compact();
+		assertEquals("a@b.c", keyRing.parser().parseSignedClaims(token).getPayload().getSubject());
+
+		// сторонний сервис получает JWK Set по HTTP и проверяет токен без обращения к банку
+		String json = new ObjectMapper().writeValueAsString(keyRing.jwks());
+		JwkSet jwkSet = Jwks.setParser().build().parse(json);
+		assertEquals(1, jwkSet.getKeys().size());
+		Jwk<?> jwk = jwkSet.getKeys().iterator().next();
+		assertEquals("ec-1", jwk.getId());
+		assertEquals("ES256", jwk.getAlgorithm());
+		assertEquals(pair.getPublic(), jwk.toKey());
+		assertEquals("a@b.c", Jwts.parser().verifyWith((PublicKey) jwk.toKey()).build()
+				.parseSignedClaims(token).getPayload().getSubject());
+	}
+
+	@Test
+	void eddsa_generatesKeyPairWhenNotConfigured_onlyInDevMode() {
+		assertThrows(IllegalArgumentException.class, () -> new JwtKeyRing("EdDSA", "ed-1", "", "", "", "", false));
+
+		JwtKeyRing keyRing = new JwtKeyRing("EdDSA", "ed-1", "", "", "", "", true);
+		String token = keyRing.sign(Jwts.builder().subject("a@b.c")).compact();
+		assertEquals("a@b.c", keyRing.parser().parseSignedClaims(token).getPayload().getSubject());
+		assertEquals("EdDSA", keyRing.parser().parseSignedClaims(token).getHeader().getAlgorithm());
+		assertEquals("ed-1", keyRing.parser().parseSignedClaims(token).getHeader().getKeyId());
+	}
+
+	@Test
+	void rotation_keepsPreviousPublicKeyInJwks() {
+		JwtKeyRing keyRing = new JwtKeyRing("ES256", "ec-1", "", "", "", "", true);
+		String old = keyRing.sign(Jwts.builder().subject("a@b.c")).compact();
+		keyRing.rotate("ec-2", null, null, null);
+
+		List<?> keys = (List<?>) keyRing.jwks().get("keys");
+		assertEquals(2, keys.size());
+		assertEquals("a@b.c", keyRing.parser().parseSignedClaims(old).getPayload().getSubject());
+
+		keyRing.retire("ec-1");
+		assertEquals(1, ((List<?>) keyRing.jwks().get("keys")).size());
+		assertThrows(SignatureException.class, () -> keyRing.parser().parseSignedClaims(old));
+	}
+
+	@Test
+	void hmacKeys_areNeverPublished() {
+		KeyPair pair = Jwts.SIG.ES256.keyPair().build();
+		JwtKeyRing keyRing = new JwtKeyRing("ES256", "ec-1", "",
+				Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded()),
+				Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()),
+				"legacy:" + hmacSecret(), false);
+
+		String legacy = new JwtKeyRing("legacy", hmacSecret(), "").sign(Jwts.builder().subject("old@b.c")).compact();
+		assertEquals("old@b.c", keyRing.parser().parseSignedClaims(legacy).getPayload().getSubject());
+
+		List<?> keys = (List<?>) keyRing.jwks().get("keys");
+		assertEquals(1, keys.size());
+		assertEquals("ec-1", ((Map<?, ?>) keys.get(0)).get("kid"));
+	}
+}
@@ -1,14 +1,34 @@
 package org.zuzukov.bank_rest.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.zuzukov.bank_rest.dto.JwtAuthenticationDto;
+import org.zuzukov.bank_rest.repository.CacheInvalidationRepository;
+import org.zuzukov.bank_rest.repository.LegacyRevokedTokenReader;
 import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
+import org.zuzukov.bank_rest.repository.RevokedTokenWriter;
+import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.security.JwtKeyRing;
+import org.zuzukov.bank_rest.entity.Role;
+import org.zuzukov.bank_rest.entity.User;
 import org.zuzukov.bank_rest.security.JwtService;
+import org.zuzukov.bank_rest.security.UserDetail;
+import org.zuzukov.bank_rest.security.RevocationIndex;
+import org.zuzukov.bank_rest.security.TokenEpochService;
+import org.zuzukov.bank_rest.security.VerifiedToken;
 
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -17,16 +37,31 @@ import static org.mockito.Mockito.*;
 class JwtServiceTest {
 
 	private RevokedTokenRepository revokedTokenRepository;
+	private RevokedTokenWriter revokedTokenWriter;
+	private LegacyRevokedTokenReader legacyReader;
+	private JwtKeyRing keyRing;
+	private RevocationIndex revocationIndex;
+	private UserRepository userRepository;
+	private TokenEpochService tokenEpochService;
 	private JwtService jwtService;
 
 	@BeforeEach
 	void setup() throws Exception {
 		revokedTokenRepository = Mockito.mock(RevokedTokenRepository.class);
-		jwtService = new JwtService(revokedTokenRepository);
 		byte[] signKey = new byte[32];
 		byte[] encKey = new byte[32];
 		for (int i = 0; i < 32; i++) { signKey[i] = (byte) i; encKey[i] = (byte) (i + 1); }
-		setPrivate(jwtService, "jwtSecret", Base64.getEncoder().encodeToString(signKey));
+		keyRing = new JwtKeyRing("k1", Base64.getEncoder().encodeToString(signKey), "");
+		revokedTokenWriter = Mockito.mock(RevokedTokenWriter.class);
+		legacyReader = Mockito.mock(LegacyRevokedTokenReader.class);
+		revocationIndex = new RevocationIndex(revokedTokenRepository, revokedTokenWriter, legacyReader, new SimpleMeterRegistry(),
+				1000, 0.01, Duration.ofMinutes(1), 500);
+		userRepository = Mockito.mock(UserRepository.class);
+		CacheInvalidationBus invalidationBus = new CacheInvalidationBus(
+				Mockito.mock(CacheInvalidationRepository.class), Duration.ofMinutes(1), Duration.ofHours(1));
+		tokenEpochService = new TokenEpochService(userRepository, invalidationBus,
+				new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+		jwtService = new JwtService(revocationIndex, keyRing, tokenEpochService);
 		setPrivate(jwtService, "jwtEncryptionSecret", Base64.getEncoder().encodeToString(encKey));
 	}
 
@@ -43,6 +78,52 @@ class JwtServiceTest {
 		assertEquals("a@b.c", jwtService.getEmailFromToken(token));
 	}
 
+	@Test
+	void verify_parsesClaimsOnce() {
+		String token = jwtService.generateJwtToken("a@b.c");
+		VerifiedToken verified = jwtService.verify(token).orElseThrow();
+		assertEquals("a@b.c", verified.subject());
+		assertNotNull(verified.jti());
+		assertTrue(verified.expiresAt().isAfter(Instant.now()));
+		verify(revokedTokenRepository, never()).existsByJti(any());
+	}
+
+	@Test
+	void verify_rejectsRevoked() {
+		String token = jwtService.generateJwtToken("a@b.c");
+		UUID jti = jwtService.verify(token).orElseThrow().jti();
+		revocationIndex.markRevoked(jti);
+		when(revokedTokenRepository.existsByJti(jti)).thenReturn(true);
+		assertTrue(jwtService.verify(token).isEmpty());
+	}
+
+	@Test
+	void verify_rejectsTokenRevokedByLegacyHash() {
+		String token = jwtService.generateJwtToken("a@b.c");
+		when(legacyReader.findActive(any()))
+				.thenReturn(Map.of(DigestUtils.sha256Hex(token), LocalDateTime.now().plusHours(1)));
+		revocationIndex.load();
+
+		assertTrue(jwtService.verify(token).isEmpty());
+		assertTrue(jwtService.verify(jwtService.generateJwtToken("a@b.c")).isPresent());
+	}
+
+	@Test
+	void userToken_carriesIdAndRolesForStatelessAuth() {
+		User user = new User();
+		user.setUserId(UUID.randomUUID());
+		user.setEmail("a@b.c");
+		user.setRoles(Set.of(Role.ROLE_USER, Role.ROLE_ADMIN));
+		when(userRepository.findTokenEpochByUserId(user.getUserId())).thenReturn(Optional.of(0));
+
+		VerifiedToken verified = jwtService.verify(jwtService.generateJwtToken(user)).orElseThrow();
+		UserDetail detail = UserDetail.fromToken(verified);
+
+		assertEquals(user.getUserId(), detail.getUserId());
+		assertEquals("a@b.c", detail.getUsername());
+		assertEquals(Set.of(Role.ROLE_USER, Role.ROLE_ADMIN), detail.getRoles());
+	}
+
 	@Test
 	void generate_auth_dto() {
 		JwtAuthenticationDto dto = jwtService.generateJwtAuthenticationDto("x@y.z");
@@ -52,11 +133,13 @@ class JwtServiceTest {
 
 	@Test
 	void refreshBaseToken_revokesOld() {
-		when(revokedTokenRepository.existsByToken(anyString())).thenReturn(false);
 		String refresh = jwtService.generateRefreshJwtToken("a@b.c");
 		JwtAuthenticationDto dto = jwtService.refreshBaseToken("a@b.c", refresh);
 		assertNotNull(dto.getToken());
-		verify(revokedTokenRepository).save(any());
+		assertTrue(jwtService.verify(refresh).isEmpty());
+		verifyNoInteractions(revokedTokenWriter);
+		revocationIndex.flush();
+		verify(revokedTokenWriter).insertIgnoringDuplicates(argThat(batch -> batch.size() == 1), any());
 	}
 
 	@Test
@@ -65,4 +148,63 @@ class JwtServiceTest {
 		assertTrue(jwtService.validateRefreshToken(refresh, "a@b.c"));
 		assertFalse(jwtService.validateRefreshToken(refresh, "other@b.c"));
 	}
+
+	@Test
+	void rotatedKey_stillValidatesTokensSignedWithPreviousKey() {
+		String old = jwtService.generateJwtToken("a@b.c");
+		byte[] next = new byte[32];
+		for (int i = 0; i < 32; i++) next[i] = (byte) (100 + i);
+		keyRing.rotate("k2", Base64.getEncoder().encodeToString(next));
+
+		String fresh = jwtService.generateJwtToken("a@b.c");
+		assertTrue(jwtService.validateJwtToken(old));
+		assertTrue(jwtService.validateJwtToken(fresh));
+
+		keyRing.retire("k1");
+		assertFalse(jwtService.validateJwtToken(old));
+		assertTrue(jwtService.validateJwtToken(fresh));
+	}
+
+	@Test
+	void rotate_existingKidRejected() {
+		String issued = jwtService.generateJwtToken("a@b.c");
+		byte[] other = new byte[32];
+		for (int i = 0; i < 32; i++) other[i] = (byte) (200 + i);
+
+		assertThrows(IllegalArgumentException.class, () -> keyRing.rotate("k1", Base64.getEncoder().encodeToString(other)));
+		assertEquals("k1", keyRing.activeKid());
+		assertTrue(jwtService.validateJwtToken(issued));
+	}
+
+	@Test
+	void bumpedEpoch_invalidatesAccessAndRefreshTokens() {
+		User user = new User();
+		user.setUserId(UUID.randomUUID());
+		user.setEmail("a@b.c");
+		user.setRoles(Set.of(Role.ROLE_USER));
+		when(userRepository.findTokenEpochByUserId(user.getUserId())).thenReturn(Optional.of(0), Optional.of(1));
+
+		JwtAuthenticationDto dto = jwtService.generateJwtAuthenticationDto(user);
+		assertTrue(jwtService.verify(dto.getToken()).isPresent());
+		assertTrue(jwtService.verify(dto.getRefreshToken()).isPresent());
+
+		tokenEpochService.bump(user);
+		assertEquals(1, user.getTokenEpoch());
+
+		assertTrue(jwtService.verify(dto.getToken()).isEmpty());
+		assertTrue(jwtService.verify(dto.getRefreshToken()).isEmpty());
+		assertTrue(jwtService.verify(jwtService.generateJwtToken(user)).isPresent());
+		verify(userRepository, times(2)).findTokenEpochByUserId(user.getUserId());
+	}
+
+	@Test
+	void deletedUser_tokensRejected() {
+		User user = new User();
+		user.setUserId(UUID.randomUUID());
+		user.setEmail("a@b.c");
+		user.setRoles(Set.of(Role.ROLE_USER));
+		when(userRepository.findTokenEpochByUserId(user.getUserId())).thenReturn(Optional.empty());
+
+		assertTrue(jwtService.verify(jwtService.generateJwtToken(user)).isEmpty());
+	}
 }
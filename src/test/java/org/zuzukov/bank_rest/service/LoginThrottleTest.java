@@ -0,0 +1,54 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.zuzukov.bank_rest.exception.custom.TooManyRequestsException;
+import org.zuzukov.bank_rest.security.LoginThrottle;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginThrottleTest {
+
+	private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+	private SimpleMeterRegistry meterRegistry;
+	private LoginThrottle throttle;
+
+	@BeforeEach
+	void setup() {
+		meterRegistry = new SimpleMeterRegistry();
+		throttle = new LoginThrottle(meterRegistry, 1000,
+				3, Duration.ofSeconds(30),
+				5, Duration.ofSeconds(10),
+				clock::get);
+	}
+
+	@Test
+	void emailBucket_allowsBurstThenThrottles() {
+		for (int i = 0; i < 3; i++) throttle.acquire("A@b.c", "ip-" + i);
+		TooManyRequestsException ex = assertThrows(TooManyRequestsException.class,
+				() -> throttle.acquire("a@B.c", "ip-9"));
+		assertEquals(10, ex.getRetryAfterSeconds());
+		assertEquals(1, meterRegistry.get("auth.login.throttled").tag("dimension", "email").counter().count());
+
+		clock.addAndGet(Duration.ofSeconds(10).toNanos());
+		throttle.acquire("a@b.c", "ip-9");
+	}
+
+	@Test
+	void ipBucket_isIndependentOfEmail() {
+		for (int i = 0; i < 5; i++) throttle.acquire("user" + i + "@b.c", "10.0.0.1");
+		assertThrows(TooManyRequestsException.class, () -> throttle.acquire("other@b.c", "10.0.0.1"));
+		throttle.acquire("other@b.c", "10.0.0.2");
+	}
+
+	@Test
+	void idleBucket_refillsToCapacityOnly() {
+		clock.addAndGet(Duration.ofHours(1).toNanos());
+		for (int i = 0; i < 3; i++) throttle.acquire("a@b.c", null);
+		assertThrows(TooManyRequestsException.class, () -> throttle.acquire("a@b.c", null));
+	}
+}
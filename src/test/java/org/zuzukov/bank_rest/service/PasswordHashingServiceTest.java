@@ -0,0 +1,124 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.zuzukov.bank_rest.config.SecurityConfig;
+import org.zuzukov.bank_rest.exception.custom.ServiceUnavailableException;
+import org.zuzukov.bank_rest.security.PasswordHashingService;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingServiceTest {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private PasswordHashingService service;
+
+	@AfterEach
+	void tearDown() {
+		if (service != null) service.shutdown();
+	}
+
+	@Test
+	void encode_and_matches_runOnExecutor() {
+		service = new PasswordHashingService(new BCryptPasswordEncoder(4), meterRegistry, 2, 4, Duration.ofSeconds(5));
+		String hash = service.encode("secret");
+		assertTrue(service.matches("secret", hash));
+		assertFalse(service.matches("other", hash));
+		assertEquals(1, meterRegistry.get("password.hashing.time").tag("operation", "encode").timer().count());
+		assertEquals(2, meterRegistry.get("password.hashing.time").tag("operation", "matches").timer().count());
+	}
+
+	@Test
+	void fullQueue_rejectsImmediately() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+			@Override
+			public String encode(CharSequence rawPassword) {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.encode(rawPassword);
+			}
+		};
+		service = new PasswordHashingService(blocking, meterRegistry, 1, 1, Duration.ofSeconds(5));
+
+		CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> service.encode("a"));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> service.encode("b"));
+		while (meterRegistry.get("password.hashing.queue.depth").gauge().value() < 1) {
+			Thread.onSpinWait();
+		}
+
+		assertThrows(ServiceUnavailableException.class, () -> service.encode("c"));
+		assertEquals(1, meterRegistry.get("password.hashing.rejected").counter().count());
+
+		release.countDown();
+		assertNotNull(running.get(5, TimeUnit.SECONDS));
+		assertNotNull(queued.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void delegatingEncoder_upgradesLegacyAndWeakHashes() throws Exception {
+		SecurityConfig config = new SecurityConfig(null, null, null);
+		setPrivate(config, "passwordAlgorithm", "bcrypt");
+		setPrivate(config, "bcryptStrength", 5);
+		setPrivate(config, "pbkdf2Iterations", 1000);
+		setPrivate(config, "pbkdf2LegacyIterations", "500");
+		PasswordEncoder encoder = config.passwordEncoder();
+
+		String legacy = new BCryptPasswordEncoder(4).encode("secret");
+		assertTrue(encoder.matches("secret", legacy));
+		assertTrue(encoder.upgradeEncoding(legacy));
+
+		String weak = "{bcrypt}" + new BCryptPasswordEncoder(4).encode("secret");
+		assertTrue(encoder.matches("secret", weak));
+		assertTrue(encoder.upgradeEncoding(weak));
+
+		String pbkdf2 = "{pbkdf2@500}" + new Pbkdf2PasswordEncoder("", 16, 500,
+				Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256).encode("secret");
+		assertTrue(encoder.matches("secret", pbkdf2));
+		assertTrue(encoder.upgradeEncoding(pbkdf2));
+
+		String current = encoder.encode("secret");
+		assertTrue(current.startsWith("{bcrypt}$2a$05$"));
+		assertTrue(encoder.matches("secret", current));
+		assertFalse(encoder.upgradeEncoding(current));
+	}
+
+	private static void setPrivate(Object target, String field, Object value) throws Exception {
+		Field f = target.getClass().getDeclaredField(field);
+		f.setAccessible(true);
+		f.set(target, value);
+	}
+
+	@Test
+	void slowHash_timesOut() {
+		PasswordEncoder slow = new BCryptPasswordEncoder(4) {
+			@Override
+			public boolean matches(CharSequence rawPassword, String encodedPassword) {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return false;
+			}
+		};
+		service = new PasswordHashingService(slow, meterRegistry, 1, 1, Duration.ofMillis(50));
+		assertThrows(ServiceUnavailableException.class, () -> service.matches("a", "b"));
+	}
+}
@@ -0,0 +1,151 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.zuzukov.bank_rest.repository.LegacyRevokedTokenReader;
+import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
+import org.zuzukov.bank_rest.repository.RevokedTokenWriter;
+import org.zuzukov.bank_rest.security.RevocationIndex;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class RevocationIndexTest {
+
+	private RevokedTokenRepository revokedTokenRepository;
+	private RevokedTokenWriter revokedTokenWriter;
+	private LegacyRevokedTokenReader legacyReader;
+	private SimpleMeterRegistry meterRegistry;
+	private RevocationIndex index;
+
+	@BeforeEach
+	void setup() {
+		revokedTokenRepository = Mockito.mock(RevokedTokenRepository.class);
+		meterRegistry = new SimpleMeterRegistry();
+		revokedTokenWriter = Mockito.mock(RevokedTokenWriter.class);
+		legacyReader = Mockito.mock(LegacyRevokedTokenReader.class);
+		index = new RevocationIndex(revokedTokenRepository, revokedTokenWriter, legacyReader, meterRegistry,
+				1000, 0.01, Duration.ofMinutes(1), 2);
+	}
+
+	@Test
+	void notRevoked_skipsDatabase() {
+		for (int i = 0; i < 100; i++) {
+			assertFalse(index.isRevoked(UUID.randomUUID()));
+		}
+		verify(revokedTokenRepository, never()).existsByJti(any());
+	}
+
+	@Test
+	void load_and_sync_populateIndex() {
+		UUID loaded = UUID.randomUUID();
+		UUID synced = UUID.randomUUID();
+		when(revokedTokenRepository.findActiveJtis(any())).thenReturn(List.of(loaded));
+		when(revokedTokenRepository.findJtisRevokedSince(any())).thenReturn(List.of(synced));
+		when(revokedTokenRepository.existsByJti(any())).thenReturn(true);
+
+		index.load();
+		index.sync();
+
+		assertTrue(index.isRevoked(loaded));
+		assertTrue(index.isRevoked(synced));
+		assertEquals(2.0, meterRegistry.get("jwt.revocation.index.size").gauge().value());
+	}
+
+	@Test
+	void filterHit_notConfirmed_countsFalsePositive() {
+		UUID jti = UUID.randomUUID();
+		index.markRevoked(jti);
+		when(revokedTokenRepository.existsByJti(jti)).thenReturn(false);
+
+		assertFalse(index.isRevoked(jti));
+		assertEquals(1.0, meterRegistry.get("jwt.revocation.index.observed.fpp").gauge().value());
+	}
+
+	@Test
+	void revoke_isVisibleBeforeFlush_andPersistedInBatches() {
+		List<UUID> jtis = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			jtis.add(UUID.randomUUID());
+			index.revoke(jtis.get(i), Instant.now().plusSeconds(60));
+		}
+		assertTrue(index.isRevoked(jtis.get(3)));
+		verify(revokedTokenRepository, never()).existsByJti(any());
+		verifyNoInteractions(revokedTokenWriter);
+
+		when(revokedTokenWriter.insertIgnoringDuplicates(anyMap(), any())).thenAnswer(inv -> ((Map<?, ?>) inv.getArgument(0)).size());
+		index.flush();
+
+		verify(revokedTokenWriter, times(3)).insertIgnoringDuplicates(anyMap(), any());
+		assertEquals(0.0, meterRegistry.get("jwt.revocation.pending").gauge().value());
+		assertEquals(5.0, meterRegistry.get("jwt.revocation.flushed.rows").counter().count());
+	}
+
+	@Test
+	void revoke_thenReload_beforeFlush_staysRevoked() {
+		UUID jti = UUID.randomUUID();
+		index.revoke(jti, Instant.now().plusSeconds(60));
+		// в БД отзыва ещё нет, пересборка фильтра его не видит
+		when(revokedTokenRepository.findActiveJtis(any())).thenReturn(List.of());
+
+		index.load();
+		assertTrue(index.isRevoked(jti));
+
+		when(revokedTokenWriter.insertIgnoringDuplicates(anyMap(), any())).thenReturn(1);
+		when(revokedTokenRepository.existsByJti(jti)).thenReturn(true);
+		index.flush();
+
+		assertTrue(index.isRevoked(jti));
+		verify(revokedTokenRepository).existsByJti(jti);
+	}
+
+	@Test
+	void legacyHashes_expireAndSurviveDroppedTable() {
+		when(legacyReader.findActive(any())).thenReturn(Map.of(
+				DigestUtils.sha256Hex("live"), LocalDateTime.now().plusHours(1),
+				DigestUtils.sha256Hex("expiring"), LocalDateTime.now().minusSeconds(1)));
+		index.load();
+		index.sync();
+
+		assertTrue(index.isRevokedLegacy("live"));
+		assertFalse(index.isRevokedLegacy("expiring"));
+		assertFalse(index.isRevokedLegacy("other"));
+
+		// таблицу удалила миграция после истечения всех старых отзывов
+		when(legacyReader.findActive(any())).thenThrow(new BadSqlGrammarException("legacy", "SELECT", new SQLException()));
+		index.load();
+		assertFalse(index.isRevokedLegacy("live"));
+	}
+
+	@Test
+	void failedFlush_keepsPendingForRetry() {
+		UUID jti = UUID.randomUUID();
+		index.revoke(jti, Instant.now().plusSeconds(60));
+		when(revokedTokenWriter.insertIgnoringDuplicates(anyMap(), any()))
+				.thenThrow(new DataAccessResourceFailureException("db down"))
+				.thenReturn(1);
+
+		index.flush();
+		assertEquals(1.0, meterRegistry.get("jwt.revocation.pending").gauge().value());
+		assertTrue(index.isRevoked(jti));
+
+		index.flush();
+		assertEquals(0.0, meterRegistry.get("jwt.revocation.pending").gauge().value());
+	}
+}
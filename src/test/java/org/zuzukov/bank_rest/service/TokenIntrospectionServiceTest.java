@@ -0,0 +1,66 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.dto.TokenIntrospectionDto;
+import org.zuzukov.bank_rest.entity.Role;
+import org.zuzukov.bank_rest.security.JwtService;
+import org.zuzukov.bank_rest.security.TokenIntrospectionService;
+import org.zuzukov.bank_rest.security.VerifiedToken;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TokenIntrospectionServiceTest {
+
+	private JwtService jwtService;
+	private TokenIntrospectionService service;
+	private VerifiedToken verified;
+
+	@BeforeEach
+	void setup() {
+		jwtService = Mockito.mock(JwtService.class);
+		service = new TokenIntrospectionService(jwtService, new SimpleMeterRegistry(), 100);
+		verified = new VerifiedToken("a@b.c", UUID.randomUUID(), 0, UUID.randomUUID(),
+				Instant.now().plusSeconds(300), Set.of(Role.ROLE_USER));
+	}
+
+	@Test
+	void repeatedIntrospection_verifiesSignatureOnce() {
+		when(jwtService.verify("tok")).thenReturn(Optional.of(verified));
+		when(jwtService.isActive(verified)).thenReturn(true);
+
+		TokenIntrospectionDto first = service.introspect("tok");
+		TokenIntrospectionDto second = service.introspect("tok");
+
+		assertTrue(first.isActive());
+		assertEquals("a@b.c", second.getSub());
+		assertEquals(Set.of("ROLE_USER"), second.getRoles());
+		assertEquals(verified.expiresAt().getEpochSecond(), second.getExp());
+		verify(jwtService, times(1)).verify("tok");
+	}
+
+	@Test
+	void revokedAfterCaching_becomesInactive() {
+		when(jwtService.verify("tok")).thenReturn(Optional.of(verified));
+		when(jwtService.isActive(verified)).thenReturn(false);
+
+		assertTrue(service.introspect("tok").isActive());
+		assertFalse(service.introspect("tok").isActive());
+	}
+
+	@Test
+	void invalidToken_isInactive() {
+		when(jwtService.verify("bad")).thenReturn(Optional.empty());
+		TokenIntrospectionDto dto = service.introspect("bad");
+		assertFalse(dto.isActive());
+		assertNull(dto.getSub());
+	}
+}
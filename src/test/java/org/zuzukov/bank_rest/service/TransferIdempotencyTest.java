@@ -0,0 +1,79 @@
+package org.zuzukov.bank_rest.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.zuzukov.bank_rest.dto.card.TransferRequestDto;
+import org.zuzukov.bank_rest.exception.custom.BadRequestException;
+import org.zuzukov.bank_rest.exception.custom.ConflictException;
+import org.zuzukov.bank_rest.repository.TransferIdempotencyWriter;
+import org.zuzukov.bank_rest.repository.TransferIdempotencyWriter.Claim;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TransferIdempotencyTest {
+
+	private final TransferIdempotencyWriter writer = Mockito.mock(TransferIdempotencyWriter.class);
+	private final TransferIdempotency idempotency = new TransferIdempotency(writer, new SimpleMeterRegistry(), Duration.ofHours(24), 100);
+
+	@Test
+	void requestHash_ignoresAmountScale() {
+		UUID from = UUID.randomUUID();
+		UUID to = UUID.randomUUID();
+		assertEquals(idempotency.requestHash(transfer(from, to, "10")), idempotency.requestHash(transfer(from, to, "10.00")));
+		assertNotEquals(idempotency.requestHash(transfer(from, to, "10")), idempotency.requestHash(transfer(from, to, "11")));
+	}
+
+	@Test
+	void claim_existingKeyReplaysAndIsCached() {
+		UUID previous = UUID.randomUUID();
+		when(writer.insert(eq("u@x"), eq("k"), any(), any(), any())).thenReturn(false);
+		when(writer.find("u@x", "k")).thenReturn(Optional.of(new Claim("h", previous)));
+
+		assertEquals(Optional.of(previous), idempotency.claim("u@x", "k", "h", UUID.randomUUID()));
+		assertEquals(Optional.of(previous), idempotency.cached("u@x", "k", "h"));
+		verify(writer, times(1)).find("u@x", "k");
+	}
+
+	@Test
+	void claim_newKeyIsNotCachedUntilRemembered() {
+		UUID transferId = UUID.randomUUID();
+		when(writer.insert(eq("u@x"), eq("k"), any(), any(), any())).thenReturn(true);
+
+		assertTrue(idempotency.claim("u@x", "k", "h", transferId).isEmpty());
+		assertTrue(idempotency.cached("u@x", "k", "h").isEmpty());
+
+		idempotency.remember("u@x", "k", "h", transferId);
+		assertEquals(Optional.of(transferId), idempotency.cached("u@x", "k", "h"));
+	}
+
+	@Test
+	void keyReusedWithDifferentRequest_conflict() {
+		idempotency.remember("u@x", "k", "h1", UUID.randomUUID());
+		assertThrows(ConflictException.class, () -> idempotency.cached("u@x", "k", "h2"));
+		assertTrue(idempotency.cached("other@x", "k", "h2").isEmpty());
+	}
+
+	@Test
+	void validateKey_rejectsBlankAndTooLong() {
+		assertThrows(BadRequestException.class, () -> idempotency.validateKey(" "));
+		assertThrows(BadRequestException.class, () -> idempotency.validateKey("x".repeat(129)));
+		idempotency.validateKey("b6f1c2d4-retry");
+	}
+
+	private static TransferRequestDto transfer(UUID from, UUID to, String amount) {
+		TransferRequestDto dto = new TransferRequestDto();
+		dto.setFromCardId(from);
+		dto.setToCardId(to);
+		dto.setAmount(new BigDecimal(amount));
+		return dto;
+	}
+}
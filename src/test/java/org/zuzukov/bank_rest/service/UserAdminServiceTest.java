@@ -10,6 +10,8 @@ import org.springframework.data.domain.Pageable;
 import org.zuzukov.bank_rest.entity.User;
 import org.zuzukov.bank_rest.exception.custom.NotFoundException;
 import org.zuzukov.bank_rest.repository.UserRepository;
+import org.zuzukov.bank_rest.security.CustomUserDetailsService;
+import org.zuzukov.bank_rest.security.TokenEpochService;
 
 import java.util.List;
 import java.util.Optional;
@@ -23,12 +25,16 @@ import static org.mockito.Mockito.*;
 class UserAdminServiceTest {
 
 	private UserRepository userRepository;
+	private CustomUserDetailsService userDetailsService;
+	private TokenEpochService tokenEpochService;
 	private UserAdminService service;
 
 	@BeforeEach
 	void setup() {
 		userRepository = Mockito.mock(UserRepository.class);
-		service = new UserAdminService(userRepository);
+		userDetailsService = Mockito.mock(CustomUserDetailsService.class);
+		tokenEpochService = Mockito.mock(TokenEpochService.class);
+		service = new UserAdminService(userRepository, userDetailsService, tokenEpochService);
 	}
 
 	@Test
@@ -43,10 +49,13 @@ class UserAdminServiceTest {
 		UUID id = UUID.randomUUID();
 		User u = new User();
 		u.setUserId(id);
+		u.setEmail("a@b.c");
 		u.setRoles(Set.of());
 		when(userRepository.findByUserId(id)).thenReturn(Optional.of(u));
 		service.setRole(id, org.zuzukov.bank_rest.entity.Role.ROLE_ADMIN, true);
 		assertTrue(u.getRoles().contains(org.zuzukov.bank_rest.entity.Role.ROLE_ADMIN));
+		verify(tokenEpochService).bump(u);
+		verify(userDetailsService).evict("a@b.c");
 	}
 
 	@Test
@@ -58,14 +67,19 @@ class UserAdminServiceTest {
 	@Test
 	void delete_success() {
 		UUID id = UUID.randomUUID();
-		when(userRepository.existsById(id)).thenReturn(true);
+		User u = new User();
+		u.setUserId(id);
+		u.setEmail("a@b.c");
+		when(userRepository.findByUserId(id)).thenReturn(Optional.of(u));
 		service.delete(id);
 		verify(userRepository).deleteById(id);
+		verify(tokenEpochService).invalidate(id);
+		verify(userDetailsService).evict("a@b.c");
 	}
 
 	@Test
 	void delete_notFound() {
-		when(userRepository.existsById(any())).thenReturn(false);
+		when(userRepository.findByUserId(any())).thenReturn(Optional.empty());
 		assertThrows(NotFoundException.class, () -> service.delete(UUID.randomUUID()));
 	}
 }
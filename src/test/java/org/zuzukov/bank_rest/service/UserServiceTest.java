@@ -3,19 +3,24 @@ package org.zuzukov.bank_rest.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.zuzukov.bank_rest.dto.*;
-import org.zuzukov.bank_rest.entity.RevokedToken;
 import org.zuzukov.bank_rest.entity.User;
 import org.zuzukov.bank_rest.exception.custom.BadRequestException;
 import org.zuzukov.bank_rest.exception.custom.ConflictException;
 import org.zuzukov.bank_rest.exception.custom.InvalidRefreshTokenException;
+import org.zuzukov.bank_rest.exception.custom.TooManyRequestsException;
 import org.zuzukov.bank_rest.exception.custom.UnauthorizedException;
-import org.zuzukov.bank_rest.repository.RevokedTokenRepository;
 import org.zuzukov.bank_rest.repository.UserRepository;
 import org.zuzukov.bank_rest.security.JwtService;
+import org.zuzukov.bank_rest.security.LoginThrottle;
+import org.zuzukov.bank_rest.security.PasswordHashingService;
+import org.zuzukov.bank_rest.security.TokenEpochService;
+import org.zuzukov.bank_rest.security.VerifiedToken;
 
+import java.time.Instant;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -25,19 +30,21 @@ import static org.mockito.Mockito.*;
 
 class UserServiceTest {
 
-	private RevokedTokenRepository revokedTokenRepository;
 	private UserRepository userRepository;
 	private JwtService jwtService;
-	private PasswordEncoder passwordEncoder;
+	private PasswordHashingService passwordHashingService;
+	private TokenEpochService tokenEpochService;
+	private LoginThrottle loginThrottle;
 	private UserService userService;
 
 	@BeforeEach
 	void setup() {
-		revokedTokenRepository = Mockito.mock(RevokedTokenRepository.class);
 		userRepository = Mockito.mock(UserRepository.class);
 		jwtService = Mockito.mock(JwtService.class);
-		passwordEncoder = Mockito.mock(PasswordEncoder.class);
-		userService = new UserService(revokedTokenRepository, userRepository, jwtService, passwordEncoder);
+		passwordHashingService = Mockito.mock(PasswordHashingService.class);
+		tokenEpochService = Mockito.mock(TokenEpochService.class);
+		loginThrottle = Mockito.mock(LoginThrottle.class);
+		userService = new UserService(userRepository, jwtService, passwordHashingService, tokenEpochService, loginThrottle);
 	}
 
 	@Test
@@ -46,8 +53,8 @@ class UserServiceTest {
 		user.setEmail("a@b.c");
 		user.setPassword("encoded");
 		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
-		when(passwordEncoder.matches("pwd", "encoded")).thenReturn(true);
-		when(jwtService.generateJwtAuthenticationDto("a@b.c")).thenReturn(new JwtAuthenticationDto());
+		when(passwordHashingService.matches("pwd", "encoded")).thenReturn(true);
+		when(jwtService.generateJwtAuthenticationDto(user)).thenReturn(new JwtAuthenticationDto());
 
 		UserCredentiallsDto dto = new UserCredentiallsDto();
 		dto.setEmail("a@b.c");
@@ -56,6 +63,54 @@ class UserServiceTest {
 		assertNotNull(res);
 	}
 
+	@Test
+	void signIn_upgradesOutdatedHash() {
+		User user = new User();
+		user.setEmail("a@b.c");
+		user.setPassword("legacy");
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
+		when(passwordHashingService.matches("pwd", "legacy")).thenReturn(true);
+		when(passwordHashingService.upgradeEncoding("legacy")).thenReturn(true);
+		when(passwordHashingService.encode("pwd")).thenReturn("{bcrypt}fresh");
+
+		UserCredentiallsDto dto = new UserCredentiallsDto();
+		dto.setEmail("a@b.c");
+		dto.setPassword("pwd");
+		userService.signIn(dto);
+
+		assertEquals("{bcrypt}fresh", user.getPassword());
+		verify(userRepository).save(user);
+	}
+
+	@Test
+	void signIn_concurrentUpgradeDoesNotFailLogin() {
+		User user = new User();
+		user.setEmail("a@b.c");
+		user.setPassword("legacy");
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
+		when(passwordHashingService.matches("pwd", "legacy")).thenReturn(true);
+		when(passwordHashingService.upgradeEncoding("legacy")).thenReturn(true);
+		when(passwordHashingService.encode("pwd")).thenReturn("{bcrypt}fresh");
+		when(userRepository.save(user)).thenThrow(new ObjectOptimisticLockingFailureException(User.class, "id"));
+		when(jwtService.generateJwtAuthenticationDto(user)).thenReturn(new JwtAuthenticationDto());
+
+		UserCredentiallsDto dto = new UserCredentiallsDto();
+		dto.setEmail("a@b.c");
+		dto.setPassword("pwd");
+		assertNotNull(userService.signIn(dto));
+	}
+
+	@Test
+	void signIn_throttledBeforeHashing() {
+		doThrow(new TooManyRequestsException("Too many login attempts, retry later", 10))
+				.when(loginThrottle).acquire("a@b.c", "10.0.0.1");
+		UserCredentiallsDto dto = new UserCredentiallsDto();
+		dto.setEmail("a@b.c");
+		dto.setPassword("pwd");
+		assertThrows(TooManyRequestsException.class, () -> userService.signIn(dto, "10.0.0.1"));
+		verifyNoInteractions(userRepository, passwordHashingService);
+	}
+
 	@Test
 	void signIn_userNotFound() {
 		when(userRepository.findByEmail(anyString())).thenReturn(Optional.empty());
@@ -70,7 +125,7 @@ class UserServiceTest {
 		user.setEmail("a@b.c");
 		user.setPassword("encoded");
 		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
-		when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
+		when(passwordHashingService.matches(anyString(), anyString())).thenReturn(false);
 		UserCredentiallsDto dto = new UserCredentiallsDto();
 		dto.setEmail("a@b.c");
 		dto.setPassword("bad");
@@ -81,9 +136,12 @@ class UserServiceTest {
 	void refreshToken_success() {
 		RefreshTokenDto dto = new RefreshTokenDto();
 		dto.setRefreshToken("rt");
-		when(jwtService.validateJwtToken("rt")).thenReturn(true);
-		when(jwtService.getEmailFromToken("rt")).thenReturn("a@b.c");
-		when(jwtService.refreshBaseToken("a@b.c", "rt")).thenReturn(new JwtAuthenticationDto());
+		VerifiedToken verified = new VerifiedToken("a@b.c", null, null, UUID.randomUUID(), Instant.now().plusSeconds(60), Set.of());
+		User user = new User();
+		user.setEmail("a@b.c");
+		when(jwtService.verify("rt")).thenReturn(Optional.of(verified));
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
+		when(jwtService.refreshBaseToken(user, verified)).thenReturn(new JwtAuthenticationDto());
 		JwtAuthenticationDto res = userService.refreshToken(dto);
 		assertNotNull(res);
 	}
@@ -98,7 +156,7 @@ class UserServiceTest {
 	void refreshToken_invalid() {
 		RefreshTokenDto dto = new RefreshTokenDto();
 		dto.setRefreshToken("rt");
-		when(jwtService.validateJwtToken("rt")).thenReturn(false);
+		when(jwtService.verify("rt")).thenReturn(Optional.empty());
 		assertThrows(InvalidRefreshTokenException.class, () -> userService.refreshToken(dto));
 	}
 
@@ -150,16 +208,34 @@ class UserServiceTest {
 	}
 
 	@Test
-	void revokeToken_savesHashOnce() {
-		when(revokedTokenRepository.existsByToken(anyString())).thenReturn(false);
+	void revokeToken_revokesVerifiedToken() {
+		VerifiedToken verified = new VerifiedToken("a@b.c", null, null, UUID.randomUUID(), Instant.now().plusSeconds(60), Set.of());
+		when(jwtService.verify("tok")).thenReturn(Optional.of(verified));
 		userService.revokeToken("tok");
-		verify(revokedTokenRepository).save(any(RevokedToken.class));
+		verify(jwtService).revoke(verified);
+	}
+
+	@Test
+	void revokeToken_ignoresInvalidToken() {
+		when(jwtService.verify("tok")).thenReturn(Optional.empty());
+		userService.revokeToken("tok");
+		verify(jwtService, never()).revoke(any());
 	}
 
 	@Test
 	void validateToken_delegates() {
-		when(jwtService.validateJwtToken("t")).thenReturn(true);
-		when(jwtService.getEmailFromToken("t")).thenReturn("a@b.c");
+		VerifiedToken verified = new VerifiedToken("a@b.c", null, null, UUID.randomUUID(), Instant.now().plusSeconds(60), Set.of());
+		when(jwtService.verify("t")).thenReturn(Optional.of(verified));
 		assertTrue(userService.validateToken("t", "a@b.c"));
+		assertFalse(userService.validateToken("t", "other@b.c"));
+	}
+
+	@Test
+	void revokeAllTokens_bumpsEpoch() {
+		User user = new User();
+		user.setEmail("a@b.c");
+		when(userRepository.findByEmail("a@b.c")).thenReturn(Optional.of(user));
+		userService.revokeAllTokens("a@b.c");
+		verify(tokenEpochService).bump(user);
 	}
 }